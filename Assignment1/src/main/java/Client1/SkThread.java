@@ -6,7 +6,10 @@ import io.swagger.client.ApiResponse;
 import io.swagger.client.api.SkiersApi;
 import io.swagger.client.model.LiftRide;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 
 /**
@@ -17,6 +20,7 @@ import java.util.concurrent.CountDownLatch;
 public class SkThread extends Thread {
 
     private static final int RETRY_LIMIT = 5;
+    private static final long BACKOFF_MILLIS = 100;
     private final int requestCount;
     private final CountDownLatch latch;
 
@@ -38,8 +42,9 @@ public class SkThread extends Thread {
      */
     @Override
     public void run() {
-        SkiersApi apiInstance = new SkiersApi();
-        ApiClient client = apiInstance.getApiClient();
+        // A client of this thread's own: the shared default client's headers would be overwritten by other threads
+        ApiClient client = new ApiClient();
+        SkiersApi apiInstance = new SkiersApi(client);
 //        String serverUrl = "http://localhost:8080/Server_war_exploded";
         String serverUrl = "http://52.33.1.66:8080/Server_war";
         client.setBasePath(serverUrl);
@@ -48,6 +53,8 @@ public class SkThread extends Thread {
         for (int i = 0; i < requestCount; i++) {
             LiftRide ride = new LiftRide().time(random.nextInt(361)).liftID(random.nextInt(41));
             SkEvent skierEvent = new SkEvent();
+            // One key per ride, sent with every retry, so the server applies the ride only once
+            client.addDefaultHeader("Idempotency-Key", UUID.randomUUID().toString());
 
             for (int retry = 0; retry < RETRY_LIMIT; retry++) {
                 try {
@@ -63,9 +70,14 @@ public class SkThread extends Thread {
                     long endTime = System.currentTimeMillis();
                     break;
                 } catch (ApiException e) {
-                    SkClient1.counter.incrementFailedPost(1);
                     System.err.println("Exception when calling SkierApi#writeNewLiftRide, attempt " + (retry + 1) + " failed");
-                    e.printStackTrace();
+                    // A ride has failed only once its last attempt has
+                    if (retry == RETRY_LIMIT - 1) {
+                        SkClient1.counter.incrementFailedPost(1);
+                        e.printStackTrace();
+                    } else {
+                        backOff(e, retry);
+                    }
                 }
             }
 
@@ -82,4 +94,52 @@ public class SkThread extends Thread {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Waits before retrying a failed attempt. A 409 (the ride is still being applied under its
+     * Idempotency-Key), 429 or 503 is retried after the server's Retry-After, or after an exponential
+     * backoff if it sent none; other failures are retried at once.
+     *
+     * @param e       the failure of the attempt
+     * @param attempt the zero-based index of the attempt
+     */
+    private static void backOff(ApiException e, int attempt) {
+        int code = e.getCode();
+        if (code != 409 && code != 429 && code != 503) {
+            return;
+        }
+        long delayMillis = BACKOFF_MILLIS << attempt;
+        String retryAfter = header(e.getResponseHeaders(), "Retry-After");
+        if (retryAfter != null) {
+            try {
+                delayMillis = Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (NumberFormatException ignored) {
+                // An HTTP-date: keep the exponential backoff
+            }
+        }
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the first value of a response header, matching the name case-insensitively.
+     *
+     * @param headers the response headers, or null
+     * @param name    the header name
+     * @return the value, or null if the header is absent
+     */
+    private static String header(Map<String, List<String>> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(0);
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,39 @@
+package Client2;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * BatchFormatTest compares the throughput of the batch endpoint with JSON and binary encoded rides.
+ * Both runs send the same number of batches from the same number of threads.
+ * The first argument is the server's base URL, e.g. http://localhost:8080/Server_war for an EmbeddedServer.
+ */
+public class BatchFormatTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        String serverUrl = args.length > 0 ? args[0] : "http://52.33.1.66:8080/Server_war";
+        int numThreads = 32;
+        int numBatches = 100;
+        int batchSize = 500;
+
+        for (boolean binary : new boolean[]{false, true}) {
+            String format = binary ? "binary" : "JSON";
+            System.out.println("Running " + format + " batches...");
+            SkClient2.counter = new Counter();
+
+            CountDownLatch latch = new CountDownLatch(numThreads);
+            long startTime = System.currentTimeMillis();
+            for (int i = 0; i < numThreads; i++) {
+                new BatchThread(serverUrl, numBatches, batchSize, binary, latch).start();
+            }
+            latch.await();
+            long totalExecutionTime = System.currentTimeMillis() - startTime;
+
+            int success = SkClient2.counter.getSuccessfulPosts();
+            System.out.println(format + " Results:");
+            System.out.println("Successful Rides: " + success);
+            System.out.println("Failed Rides: " + SkClient2.counter.getFailedPosts());
+            System.out.println("Total Execution Time: " + totalExecutionTime + " ms");
+            System.out.println("Throughput: " + success / (totalExecutionTime / 1000.0) + " rides/sec\n");
+        }
+    }
+}
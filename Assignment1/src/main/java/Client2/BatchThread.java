@@ -0,0 +1,105 @@
+package Client2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * BatchThread sends lift rides to the server's batch endpoint, many rides per request,
+ * encoded either as JSON or in the compact binary format. It retries failed requests and
+ * records the latency and status code of each request like SkThread does.
+ */
+public class BatchThread extends Thread {
+
+    private static final int RETRY_TIMES = 5;  // Number of retries for each request
+
+    private final String batchUrl;              // URL of POST /skiers/liftrides
+    private final int numberOfBatches;          // Number of batch requests to send in this thread
+    private final int batchSize;                // Number of rides in each batch
+    private final boolean binary;               // Send binary records instead of JSON
+    private final CountDownLatch curLatch;      // Latch to synchronize the completion of the thread
+
+    /**
+     * Constructs a BatchThread.
+     *
+     * @param serverUrl       the base URL of the server, e.g. http://localhost:8080/Server_war
+     * @param numberOfBatches the number of batch requests to send
+     * @param batchSize       the number of rides in each batch
+     * @param binary          true to send application/octet-stream records, false to send JSON
+     * @param curLatch        the CountDownLatch to signal thread completion
+     */
+    public BatchThread(String serverUrl, int numberOfBatches, int batchSize, boolean binary, CountDownLatch curLatch) {
+        this.batchUrl = serverUrl + "/skiers/liftrides";
+        this.numberOfBatches = numberOfBatches;
+        this.batchSize = batchSize;
+        this.binary = binary;
+        this.curLatch = curLatch;
+    }
+
+    /**
+     * Builds and sends the batches. Each batch is retried up to {@code RETRY_TIMES} times;
+     * the counter counts rides, not requests.
+     */
+    @Override
+    public void run() {
+        Random rand = new Random();
+        RideBatchEncoder encoder = new RideBatchEncoder(batchSize);
+        String requestType = binary ? "POST_BINARY" : "POST_JSON";
+
+        for (int i = 0; i < numberOfBatches; i++) {
+            encoder.clear();
+            while (encoder.add(new SkEvent(), rand.nextInt(361), rand.nextInt(41), rand.nextInt(11))) {
+                // Fill the batch
+            }
+            byte[] body = binary ? encoder.encodeBinary() : encoder.encodeJson();
+
+            for (int j = 0; j < RETRY_TIMES; j++) {
+                try {
+                    long startTime = System.currentTimeMillis();
+                    int status = post(body);
+                    long endTime = System.currentTimeMillis();
+                    RecordProcessor.records.add(new Record(startTime, requestType, endTime - startTime, status));
+                    if (status == HttpURLConnection.HTTP_CREATED) {
+                        SkClient2.counter.incrementSuccessfulPost(encoder.size());
+                        break;
+                    }
+                    SkClient2.counter.incrementFailedPost(encoder.size());
+                } catch (IOException e) {
+                    SkClient2.counter.incrementFailedPost(encoder.size());
+                    System.err.println("Exception when posting ride batch, tried " + j + " times");
+                    e.printStackTrace();
+                }
+            }
+        }
+        curLatch.countDown();
+    }
+
+    /**
+     * Posts one encoded batch and drains the response.
+     *
+     * @param body the encoded batch
+     * @return the HTTP status code
+     * @throws IOException if the request fails
+     */
+    private int post(byte[] body) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(batchUrl).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(body.length);
+        conn.setRequestProperty("Content-Type", binary ? "application/octet-stream" : "application/json");
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body);
+        }
+        int status = conn.getResponseCode();
+        try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            if (in != null) {
+                in.readAllBytes();
+            }
+        }
+        return status;
+    }
+}
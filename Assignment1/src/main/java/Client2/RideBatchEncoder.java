@@ -0,0 +1,104 @@
+package Client2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RideBatchEncoder collects lift rides for the server's batch endpoint (POST /skiers/liftrides)
+ * and encodes them either as a JSON array or in the compact binary format, so load tests can
+ * compare the two. The binary format is one 28-byte record per ride: seven little-endian ints
+ * (resortID, seasonID, dayID, skierID, time, liftID, waitTime).
+ */
+public class RideBatchEncoder {
+
+    public static final int BINARY_RECORD_BYTES = 28;
+
+    private final int[] columns;
+    private int size;
+
+    /**
+     * Constructs an empty RideBatchEncoder.
+     *
+     * @param capacity the maximum number of rides in one batch
+     */
+    public RideBatchEncoder(int capacity) {
+        this.columns = new int[capacity * 7];
+    }
+
+    /**
+     * Adds a ride to the batch.
+     *
+     * @param event    the skier event giving the resort, season, day and skier
+     * @param time     the ride time
+     * @param liftID   the lift ID
+     * @param waitTime the wait time
+     * @return true if the ride was added, false if the batch is full
+     */
+    public boolean add(SkEvent event, int time, int liftID, int waitTime) {
+        if (size * 7 == columns.length) {
+            return false;
+        }
+        int base = size * 7;
+        columns[base] = event.getResortID();
+        columns[base + 1] = Integer.parseInt(event.getSeasonID());
+        columns[base + 2] = Integer.parseInt(event.getDayID());
+        columns[base + 3] = event.getSkierID();
+        columns[base + 4] = time;
+        columns[base + 5] = liftID;
+        columns[base + 6] = waitTime;
+        size++;
+        return true;
+    }
+
+    /**
+     * Returns the number of rides in the batch.
+     *
+     * @return the ride count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every ride from the batch.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Encodes the batch in the binary format.
+     *
+     * @return the request body for Content-Type application/octet-stream
+     */
+    public byte[] encodeBinary() {
+        ByteBuffer buffer = ByteBuffer.allocate(size * BINARY_RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(columns, 0, size * 7);
+        return buffer.array();
+    }
+
+    /**
+     * Encodes the batch as a JSON array of ride objects.
+     *
+     * @return the request body for Content-Type application/json
+     */
+    public byte[] encodeJson() {
+        StringBuilder json = new StringBuilder(size * 100).append('[');
+        for (int i = 0; i < size; i++) {
+            int base = i * 7;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"resortID\":").append(columns[base])
+                    .append(",\"seasonID\":").append(columns[base + 1])
+                    .append(",\"dayID\":").append(columns[base + 2])
+                    .append(",\"skierID\":").append(columns[base + 3])
+                    .append(",\"time\":").append(columns[base + 4])
+                    .append(",\"liftID\":").append(columns[base + 5])
+                    .append(",\"waitTime\":").append(columns[base + 6])
+                    .append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
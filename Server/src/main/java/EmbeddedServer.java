@@ -0,0 +1,118 @@
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * EmbeddedServer boots an embedded Tomcat hosting the servlets of this module, configured by the same
+ * web/WEB-INF/web.xml as the WAR, so the server can be started and benchmarked without an external container.
+ *
+ * Options: --port (default 8080), --context (default /Server_war, the path the clients use),
+ * --web (the web application directory, default web), --max-threads (default 200) and
+ * --virtual-threads, which runs each request on its own virtual thread instead of a sized pool.
+ * Virtual threads need Java 21 or later; on older runtimes the option falls back to the platform pool.
+ * --data-dir sets the parent of the data directories, so several servers can share a host; --cluster-nodes
+ * (a comma-separated list of base URLs) partitions the skiers across the listed servers, --cluster-self
+ * names this server among them (default http://localhost:PORT followed by the context path) and the required
+ * --cluster-secret is shared by the listed servers to authenticate their requests to each other.
+ *
+ * Run from the Server directory with: mvn compile exec:java -Dexec.args="--virtual-threads"
+ */
+public class EmbeddedServer {
+
+    /**
+     * Starts the server and blocks until it is stopped.
+     *
+     * @param args the command-line options
+     * @throws LifecycleException If Tomcat fails to start.
+     * @throws IOException If the working directory cannot be created.
+     */
+    public static void main(String[] args) throws LifecycleException, IOException {
+        int port = 8080;
+        String contextPath = "/Server_war";
+        String webDir = "web";
+        int maxThreads = 200;
+        boolean virtualThreads = false;
+        String dataDir = null;
+        String clusterNodes = null;
+        String clusterSelf = null;
+        String clusterSecret = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--context":
+                    contextPath = args[++i];
+                    break;
+                case "--web":
+                    webDir = args[++i];
+                    break;
+                case "--max-threads":
+                    maxThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "--virtual-threads":
+                    virtualThreads = true;
+                    break;
+                case "--data-dir":
+                    dataDir = args[++i];
+                    break;
+                case "--cluster-nodes":
+                    clusterNodes = args[++i];
+                    break;
+                case "--cluster-self":
+                    clusterSelf = args[++i];
+                    break;
+                case "--cluster-secret":
+                    clusterSecret = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Tomcat tomcat = new Tomcat();
+        tomcat.setPort(port);
+        tomcat.setBaseDir(Files.createTempDirectory("skier-tomcat").toString());
+        tomcat.setAddDefaultWebXmlToWebapp(false);
+
+        Connector connector = tomcat.getConnector();
+        if (virtualThreads && Runtime.version().feature() >= 21) {
+            connector.setProperty("useVirtualThreads", "true");
+        } else {
+            if (virtualThreads) {
+                System.err.println("Virtual threads need Java 21+, running on " + Runtime.version()
+                        + "; using a pool of " + maxThreads + " platform threads");
+                virtualThreads = false;
+            }
+            connector.setProperty("maxThreads", Integer.toString(maxThreads));
+        }
+
+        Context context = tomcat.addWebapp(contextPath, new File(webDir).getAbsolutePath());
+        // Load the webapp's classes through this class's loader, which also sees Tomcat under exec:java
+        context.setParentClassLoader(EmbeddedServer.class.getClassLoader());
+        // The servlets come from the application classpath; skip scanning its jars for web fragments
+        ((StandardJarScanner) context.getJarScanner()).setScanClassPath(false);
+        if (dataDir != null) {
+            context.addParameter("data.dir", new File(dataDir).getAbsolutePath());
+        }
+        if (clusterNodes != null) {
+            context.addParameter("cluster.nodes", clusterNodes);
+            context.addParameter("cluster.self",
+                    clusterSelf != null ? clusterSelf : "http://localhost:" + port + contextPath);
+            if (clusterSecret != null) {
+                context.addParameter("cluster.secret", clusterSecret);
+            }
+        }
+
+        tomcat.start();
+        System.out.println("Listening on http://localhost:" + port + contextPath
+                + (virtualThreads ? " with virtual threads" : " with " + maxThreads + " threads"));
+        tomcat.getServer().await();
+    }
+}
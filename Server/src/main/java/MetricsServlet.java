@@ -0,0 +1,63 @@
+import metrics.ServerMetrics;
+import trace.RequestTrace;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * MetricsServlet exposes the server's request metrics in the Prometheus text format:
+ * per-route latency quantiles (p50, p95, p99, p999) and per-status request counts.
+ * It also switches request tracing at runtime: POST with "serverTiming=on" or "serverTiming=off" starts or
+ * stops the Server-Timing header on every response. The JFR events of the same stages are recorded while a
+ * Flight Recorder recording runs, started for example with "jcmd PID JFR.start".
+ */
+@WebServlet(name = "MetricsServlet", value = "/metrics")
+public class MetricsServlet extends HttpServlet {
+
+    /**
+     * Initializes the servlet, enabling the Server-Timing header if the init parameter "trace.serverTiming" is true.
+     */
+    @Override
+    public void init() {
+        RequestTrace.setServerTiming("true".equalsIgnoreCase(getInitParameter("trace.serverTiming")));
+    }
+
+    /**
+     * Handles the HTTP GET request by writing every metric.
+     *
+     * @param req  The HttpServletRequest object that contains the request.
+     * @param res  The HttpServletResponse object that contains the response.
+     * @throws IOException If an input or output error is detected when the servlet handles the GET request.
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        res.setStatus(HttpServletResponse.SC_OK);
+        res.setContentType("text/plain; version=0.0.4");
+        res.setCharacterEncoding("UTF-8");
+        PrintWriter out = res.getWriter();
+        ServerMetrics.writePrometheus(out);
+        out.flush();
+    }
+
+    /**
+     * Handles the HTTP POST request by switching the Server-Timing header on or off.
+     * Answers 204 on success and 400 if "serverTiming" is neither "on" nor "off".
+     *
+     * @param req  The HttpServletRequest object that contains the request.
+     * @param res  The HttpServletResponse object that contains the response.
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse res) {
+        String serverTiming = req.getParameter("serverTiming");
+        if (!"on".equals(serverTiming) && !"off".equals(serverTiming)) {
+            res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        RequestTrace.setServerTiming("on".equals(serverTiming));
+        res.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+}
@@ -0,0 +1,540 @@
+import cluster.ClusterClient;
+import codec.JsonCodec;
+import codec.ResponseBody;
+import codec.ResponseWriter;
+import codec.RideExportWriter;
+import entity.Leaderboard;
+import entity.LiftUtilization;
+import entity.TopSkier;
+import entity.UniqueSkiers;
+import metrics.Endpoint;
+import metrics.ServerMetrics;
+import pool.ThreadCache;
+import query.LeaderboardView;
+import query.LiftGrid;
+import query.LiftUtilizationView;
+import query.TopSkiers;
+import query.UniqueSkierView;
+import route.Route;
+import route.RouteKind;
+import route.UrlRouter;
+import storage.DayExport;
+import storage.RideCursor;
+import storage.RideStore;
+import trace.RequestTrace;
+import trace.Stage;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+import javax.servlet.annotation.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * ResortServlet is a servlet that handles HTTP GET requests for resort-wide data of one day or season.
+ * It reads the ride store and the views SkierServlet maintains on ingest, which SkierServlet publishes as
+ * ServletContext attributes when it starts; SkierServlet is therefore loaded on startup first.
+ *
+ * In a partitioned deployment every node holds the rides of the skiers it owns, so a resort-wide query is
+ * fanned out: the node asks all others for their local answer and merges them with its own. An export walks
+ * the nodes one after another, with the node's index prefixed to the cursor.
+ */
+@WebServlet(name = "ResortServlet", value = "/resorts/*", loadOnStartup = 2)
+public class ResortServlet extends HttpServlet {
+
+    private static final int DEFAULT_TOP = 10;
+    private static final int EXPORT_CHUNK_BYTES = 32 * 1024;
+    private static final String NEXT_CURSOR = "X-Next-Cursor";
+
+    // Idle objects each cache keeps for requests on virtual threads
+    private static final int POOLED = 256;
+
+    // Chunk buffer reused by each container thread when streaming an export
+    private static final ThreadCache<byte[]> EXPORT_BUFFER =
+            new ThreadCache<>(() -> new byte[EXPORT_CHUNK_BYTES], POOLED);
+
+    // Route reused by each container thread so routing allocates nothing
+    private static final ThreadCache<Route> ROUTE = new ThreadCache<>(Route::new, POOLED);
+
+    private final UrlRouter router = UrlRouter.resorts();
+
+    private LeaderboardView leaderboardView;
+    private UniqueSkierView uniqueSkierView;
+    private LiftUtilizationView liftUtilizationView;
+    private RideStore rideStore;
+    private int exportMaxRows;
+    private ClusterClient cluster;
+
+    /**
+     * Initializes the servlet by looking up the ride store, the views and, in a partitioned deployment,
+     * the cluster client published by SkierServlet.
+     * Init parameters: "export.maxRows", the most rides one page of an export may return.
+     *
+     * @throws ServletException If SkierServlet has not been initialized yet or export.maxRows is not a number.
+     */
+    @Override
+    public void init() throws ServletException {
+        leaderboardView = (LeaderboardView) getServletContext().getAttribute(LeaderboardView.ATTRIBUTE);
+        uniqueSkierView = (UniqueSkierView) getServletContext().getAttribute(UniqueSkierView.ATTRIBUTE);
+        liftUtilizationView = (LiftUtilizationView) getServletContext().getAttribute(LiftUtilizationView.ATTRIBUTE);
+        rideStore = (RideStore) getServletContext().getAttribute(RideStore.ATTRIBUTE);
+        if (leaderboardView == null || uniqueSkierView == null || liftUtilizationView == null || rideStore == null) {
+            throw new ServletException("ResortServlet requires SkierServlet to be loaded first");
+        }
+        cluster = (ClusterClient) getServletContext().getAttribute(ClusterClient.ATTRIBUTE);
+        String maxRows = getInitParameter("export.maxRows");
+        try {
+            exportMaxRows = maxRows == null ? 100000 : Integer.parseInt(maxRows.trim());
+        } catch (NumberFormatException e) {
+            throw new ServletException("Invalid export.maxRows: " + maxRows, e);
+        }
+    }
+
+    /**
+     * Handles the HTTP GET request.
+     * Based on the URL path, it returns the top skiers by vertical of one day, where the "n" query parameter
+     * selects how many (10 by default), the approximate number of unique skiers of one day or season,
+     * the rides per lift and time bucket of one day, or one page of all rides of a day as NDJSON or CSV.
+     *
+     * @param req  The HttpServletRequest object that contains the request.
+     * @param res  The HttpServletResponse object that contains the response.
+     * @throws ServletException If a servlet-specific error occurs.
+     * @throws IOException If an input or output error is detected when the servlet handles the GET request.
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+        long startNanos = System.nanoTime();
+        RequestTrace trace = RequestTrace.begin(res, startNanos);
+        Endpoint endpoint = Endpoint.OTHER;
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        Route route = null;
+
+        try {
+            // Route the URL path and dispatch to the matching handler
+            trace.enter(Stage.ROUTE);
+            route = ROUTE.acquire();
+            boolean routed = router.route(req.getPathInfo(), route);
+            trace.enter(Stage.QUERY);
+            if (!routed) {
+                ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.MISSING_PARAMETER);
+            } else if (route.getSeasonID() > RideStore.MAX_SEASON_ID) {
+                // No ride of a season above the store's maximum is ever accepted
+                ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.DATA_NOT_FOUND);
+            } else if (route.getKind() == RouteKind.DAY_LEADERBOARD) {
+                endpoint = Endpoint.GET_LEADERBOARD;
+                trace.endpoint(endpoint.getLabel());
+                writeLeaderboard(req, res, route);
+            } else if (route.getKind() == RouteKind.DAY_SKIERS || route.getKind() == RouteKind.SEASON_SKIERS) {
+                endpoint = Endpoint.GET_UNIQUE_SKIERS;
+                trace.endpoint(endpoint.getLabel());
+                writeUniqueSkiers(req, res, route);
+            } else if (route.getKind() == RouteKind.DAY_LIFTS) {
+                endpoint = Endpoint.GET_LIFT_UTILIZATION;
+                trace.endpoint(endpoint.getLabel());
+                writeLiftUtilization(req, res, route);
+            } else if (route.getKind() == RouteKind.DAY_RIDES) {
+                endpoint = Endpoint.GET_DAY_RIDES;
+                trace.endpoint(endpoint.getLabel());
+                writeRides(req, res, route);
+            } else {
+                ResponseWriter.write(res, HttpServletResponse.SC_METHOD_NOT_ALLOWED, ResponseBody.METHOD_NOT_ALLOWED);
+            }
+        } finally {
+            ROUTE.release(route);
+            trace.finish(res.getStatus());
+            ServerMetrics.record(endpoint, res.getStatus(), startNanos);
+        }
+    }
+
+    /**
+     * Writes the top N skiers by vertical of one day, highest first.
+     * Answers 400 if "n" is not a number between 1 and the configured maximum, and 404 if the day has no rides.
+     *
+     * @param req   The HttpServletRequest object that contains the request.
+     * @param res   The HttpServletResponse object that contains the response.
+     * @param route the matched DAY_LEADERBOARD route
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private void writeLeaderboard(HttpServletRequest req, HttpServletResponse res, Route route) throws IOException {
+        int n;
+        try {
+            String top = req.getParameter("n");
+            n = top == null ? DEFAULT_TOP : Integer.parseInt(top);
+        } catch (NumberFormatException ex) {
+            n = -1;
+        }
+        if (n < 1 || n > leaderboardView.capacity()) {
+            ResponseWriter.write(res, HttpServletResponse.SC_BAD_REQUEST, ResponseBody.INVALID_PARAMETER);
+            return;
+        }
+
+        TopSkiers day = leaderboardView.day(route.getResortID(), route.getSeasonID(), route.getDayID());
+        boolean found = day != null;
+        List<TopSkier> leaders = new ArrayList<>();
+        if (day != null) {
+            int[] skierIDs = new int[n];
+            long[] verticals = new long[n];
+            int count = day.top(n, skierIDs, verticals);
+            for (int i = 0; i < count; i++) {
+                leaders.add(new TopSkier(skierIDs[i], verticals[i]));
+            }
+        }
+        if (fansOut(req)) {
+            List<Leaderboard> peers = fetchPeers(req, Leaderboard.class);
+            if (peers == null) {
+                writeNodeUnavailable(res);
+                return;
+            }
+            // Nodes own disjoint skiers, so the overall top N are among the top N of each node
+            for (Leaderboard peer : peers) {
+                leaders.addAll(peer.getTopSkiers());
+                found = true;
+            }
+            leaders.sort(Comparator.comparing(TopSkier::getTotalVert).reversed());
+            if (leaders.size() > n) {
+                leaders = new ArrayList<>(leaders.subList(0, n));
+            }
+        }
+        if (!found) {
+            ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.DATA_NOT_FOUND);
+            return;
+        }
+        ResponseWriter.writeJson(res, HttpServletResponse.SC_OK, new Leaderboard(leaders));
+    }
+
+    /**
+     * Writes the estimated number of unique skiers of one day, or of a whole season when the route has no day.
+     * The count comes from HyperLogLog sketches and is within a few percent of the exact number; across
+     * nodes, which own disjoint skiers, the counts are added up. Answers 404 if there are no rides in scope.
+     *
+     * @param req   The HttpServletRequest object that contains the request.
+     * @param res   The HttpServletResponse object that contains the response.
+     * @param route the matched DAY_SKIERS or SEASON_SKIERS route
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private void writeUniqueSkiers(HttpServletRequest req, HttpServletResponse res, Route route) throws IOException {
+        boolean day = route.getKind() == RouteKind.DAY_SKIERS;
+        long count = day ? uniqueSkierView.dayCount(route.getResortID(), route.getSeasonID(), route.getDayID())
+                : uniqueSkierView.seasonCount(route.getResortID(), route.getSeasonID());
+        if (fansOut(req)) {
+            List<UniqueSkiers> peers = fetchPeers(req, UniqueSkiers.class);
+            if (peers == null) {
+                writeNodeUnavailable(res);
+                return;
+            }
+            for (UniqueSkiers peer : peers) {
+                count = Math.max(count, 0) + peer.getNumSkiers();
+            }
+        }
+        if (count < 0) {
+            ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.DATA_NOT_FOUND);
+            return;
+        }
+        UniqueSkiers body = new UniqueSkiers(route.getResortID(), route.getSeasonID(),
+                day ? route.getDayID() : null, count);
+        ResponseWriter.writeJson(res, HttpServletResponse.SC_OK, body);
+    }
+
+    /**
+     * Writes the ride counts of one day per lift and time bucket, as a matrix indexed by [liftID][bucket],
+     * adding up the matrices of all nodes. Answers 404 if the day has no rides.
+     *
+     * @param req   The HttpServletRequest object that contains the request.
+     * @param res   The HttpServletResponse object that contains the response.
+     * @param route the matched DAY_LIFTS route
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private void writeLiftUtilization(HttpServletRequest req, HttpServletResponse res, Route route)
+            throws IOException {
+        LiftGrid grid = liftUtilizationView.day(route.getResortID(), route.getSeasonID(), route.getDayID());
+        long[][] rides = grid == null ? null : grid.snapshot();
+        int bucketMinutes = grid == null ? 0 : grid.getBucketMinutes();
+        if (fansOut(req)) {
+            List<LiftUtilization> peers = fetchPeers(req, LiftUtilization.class);
+            if (peers == null) {
+                writeNodeUnavailable(res);
+                return;
+            }
+            for (LiftUtilization peer : peers) {
+                rides = rides == null ? peer.getRides() : add(rides, peer.getRides());
+                bucketMinutes = peer.getBucketMinutes();
+            }
+        }
+        if (rides == null) {
+            ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.DATA_NOT_FOUND);
+            return;
+        }
+        LiftUtilization body = new LiftUtilization(route.getResortID(), route.getSeasonID(), route.getDayID(),
+                bucketMinutes, rides);
+        ResponseWriter.writeJson(res, HttpServletResponse.SC_OK, body);
+    }
+
+    /**
+     * Streams one page of the rides of a day from the store's columns, as NDJSON by default or as CSV with
+     * "format=csv". A page holds up to "limit" rides (the configured maximum by default) starting at "cursor"
+     * (the first ride by default); if rides are left after it, the X-Next-Cursor header holds the cursor of
+     * the next page. The body is written in fixed-size chunks, so memory does not grow with the page.
+     * Answers 400 for a bad parameter, 404 if the day has no rides, and 410 if the cursor was issued before
+     * the day was frozen or merged, in which case the export must start over.
+     * In a partitioned deployment the pages of each node follow one another; a page never spans two nodes.
+     *
+     * @param req   The HttpServletRequest object that contains the request.
+     * @param res   The HttpServletResponse object that contains the response.
+     * @param route the matched DAY_RIDES route
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private void writeRides(HttpServletRequest req, HttpServletResponse res, Route route) throws IOException {
+        String format = req.getParameter("format");
+        boolean csv = "csv".equals(format);
+        String cursor = req.getParameter("cursor");
+        int limit;
+        try {
+            String rows = req.getParameter("limit");
+            limit = rows == null ? exportMaxRows : Integer.parseInt(rows);
+        } catch (NumberFormatException ex) {
+            limit = -1;
+        }
+        if ((format != null && !csv && !"ndjson".equals(format)) || limit < 1 || limit > exportMaxRows) {
+            ResponseWriter.write(res, HttpServletResponse.SC_BAD_REQUEST, ResponseBody.INVALID_PARAMETER);
+            return;
+        }
+
+        if (!fansOut(req)) {
+            if (!writeLocalRides(res, route, csv, limit, cursor, -1)) {
+                ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.DATA_NOT_FOUND);
+            }
+            return;
+        }
+
+        // A cluster-wide cursor is "node.cursor", where an empty node cursor starts that node's export
+        int node = 0;
+        String nodeCursor = null;
+        if (cursor != null) {
+            int dot = cursor.indexOf('.');
+            try {
+                node = dot < 0 ? -1 : Integer.parseInt(cursor.substring(0, dot));
+            } catch (NumberFormatException ex) {
+                node = -1;
+            }
+            if (node < 0 || node >= cluster.size()) {
+                ResponseWriter.write(res, HttpServletResponse.SC_BAD_REQUEST, ResponseBody.INVALID_PARAMETER);
+                return;
+            }
+            nodeCursor = dot == cursor.length() - 1 ? null : cursor.substring(dot + 1);
+        }
+        // Nodes without rides of the day are skipped
+        for (; node < cluster.size(); node++, nodeCursor = null) {
+            try {
+                boolean written = node == cluster.self()
+                        ? writeLocalRides(res, route, csv, limit, nodeCursor, node)
+                        : proxyRides(req, res, csv, limit, nodeCursor, node);
+                if (written) {
+                    return;
+                }
+            } catch (IOException e) {
+                if (res.isCommitted()) {
+                    throw e;
+                }
+                log("Failed to export rides from node " + node, e);
+                writeNodeUnavailable(res);
+                return;
+            }
+        }
+        if (cursor == null) {
+            ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.DATA_NOT_FOUND);
+        } else {
+            // The nodes after the cursor's node had no rides: an empty last page
+            RequestTrace.beforeBody(res);
+            res.setStatus(HttpServletResponse.SC_OK);
+            res.setContentType(csv ? "text/csv" : "application/x-ndjson");
+            byte[] buffer = EXPORT_BUFFER.acquire();
+            try {
+                new RideExportWriter(res.getOutputStream(), buffer, csv).finish();
+            } finally {
+                EXPORT_BUFFER.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Streams one page of this node's rides of a day.
+     *
+     * @param res    The HttpServletResponse object that contains the response.
+     * @param route  the matched DAY_RIDES route
+     * @param csv    true for CSV, false for NDJSON
+     * @param limit  the most rides in the page
+     * @param cursor the cursor of the page, or null for the first page
+     * @param node   this node's index when the page is part of a cluster-wide export, or -1
+     * @return false if this node has no rides of the day, in which case nothing was written
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private boolean writeLocalRides(HttpServletResponse res, Route route, boolean csv, int limit, String cursor,
+                                    int node) throws IOException {
+        DayExport export = rideStore.export(route.getResortID(), route.getSeasonID(), route.getDayID());
+        if (export == null) {
+            return false;
+        }
+        RideCursor from;
+        try {
+            from = cursor == null ? export.start() : RideCursor.parse(cursor);
+        } catch (IllegalArgumentException ex) {
+            ResponseWriter.write(res, HttpServletResponse.SC_BAD_REQUEST, ResponseBody.INVALID_PARAMETER);
+            return true;
+        }
+        if (cursor != null && !export.accepts(from)) {
+            ResponseWriter.write(res, HttpServletResponse.SC_GONE, ResponseBody.CURSOR_EXPIRED);
+            return true;
+        }
+
+        // The page's end is known before any ride is read, so the next cursor can go in a header
+        RideCursor to = export.advance(from, limit);
+        String next = to == null ? null : to.toString();
+        if (node >= 0) {
+            next = nextCursor(node, next);
+        }
+        if (next != null) {
+            res.setHeader(NEXT_CURSOR, next);
+        }
+        RequestTrace.beforeBody(res);
+        res.setStatus(HttpServletResponse.SC_OK);
+        res.setContentType(csv ? "text/csv" : "application/x-ndjson");
+        byte[] buffer = EXPORT_BUFFER.acquire();
+        try {
+            RideExportWriter writer = new RideExportWriter(res.getOutputStream(), buffer, csv);
+            export.scan(from, to, writer);
+            writer.finish();
+        } finally {
+            EXPORT_BUFFER.release(buffer);
+        }
+        return true;
+    }
+
+    /**
+     * Streams one page of another node's rides of a day, copying the node's body as it arrives.
+     *
+     * @param req    The HttpServletRequest object that contains the request.
+     * @param res    The HttpServletResponse object that contains the response.
+     * @param csv    true for CSV, false for NDJSON
+     * @param limit  the most rides in the page
+     * @param cursor the node's own cursor of the page, or null for the node's first page
+     * @param node   the node to read from
+     * @return false if the node has no rides of the day, in which case nothing was written
+     * @throws IOException If the node cannot be reached or an error occurs while writing the response.
+     */
+    private boolean proxyRides(HttpServletRequest req, HttpServletResponse res, boolean csv, int limit,
+                               String cursor, int node) throws IOException {
+        String path = req.getServletPath() + req.getPathInfo() + "?format=" + (csv ? "csv" : "ndjson")
+                + "&limit=" + limit + (cursor == null ? "" : "&cursor=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8));
+        RequestTrace trace = RequestTrace.current();
+        trace.enter(Stage.CLUSTER);
+        HttpResponse<InputStream> answer = cluster.getLocalStream(node, path);
+        if (answer.statusCode() == HttpServletResponse.SC_NOT_FOUND && cursor == null) {
+            answer.body().close();
+            trace.enter(Stage.QUERY);
+            return false;
+        }
+        RequestTrace.beforeBody(res);
+        res.setStatus(answer.statusCode());
+        answer.headers().firstValue("Content-Type").ifPresent(res::setContentType);
+        if (answer.statusCode() == HttpServletResponse.SC_OK) {
+            String next = nextCursor(node, answer.headers().firstValue(NEXT_CURSOR).orElse(null));
+            if (next != null) {
+                res.setHeader(NEXT_CURSOR, next);
+            }
+        }
+        ClusterClient.copy(answer.body(), res.getOutputStream());
+        return true;
+    }
+
+    /**
+     * Returns the cluster-wide cursor following a node's page.
+     *
+     * @param node       the node of the page
+     * @param nodeCursor the node's own next cursor, or null if the page was the node's last
+     * @return the cursor, or null if no node is left
+     */
+    private String nextCursor(int node, String nodeCursor) {
+        if (nodeCursor != null) {
+            return node + "." + nodeCursor;
+        }
+        return node + 1 < cluster.size() ? (node + 1) + "." : null;
+    }
+
+    /**
+     * Returns whether a request must be answered for the whole cluster rather than from this node's data.
+     *
+     * @param req The HttpServletRequest object that contains the request.
+     * @return true in a partitioned deployment unless another node sent the request
+     */
+    private boolean fansOut(HttpServletRequest req) {
+        return cluster != null && !cluster.isFromPeer(req);
+    }
+
+    /**
+     * Sends the request to every other node for its local answer and parses the answers in parallel.
+     *
+     * @param req  The HttpServletRequest object that contains the request.
+     * @param type the entity each node answers with
+     * @return the answers of the nodes that have data in scope, or null if a node could not answer
+     */
+    private <T> List<T> fetchPeers(HttpServletRequest req, Class<T> type) {
+        String path = req.getServletPath() + req.getPathInfo()
+                + (req.getQueryString() == null ? "" : "?" + req.getQueryString());
+        RequestTrace trace = RequestTrace.current();
+        trace.enter(Stage.CLUSTER);
+        List<CompletableFuture<HttpResponse<byte[]>>> pending = new ArrayList<>();
+        for (int node = 0; node < cluster.size(); node++) {
+            pending.add(node == cluster.self() ? null : cluster.getLocalAsync(node, path));
+        }
+        List<T> answers = new ArrayList<>();
+        for (int node = 0; node < cluster.size(); node++) {
+            if (pending.get(node) == null) {
+                continue;
+            }
+            try {
+                HttpResponse<byte[]> answer = cluster.await(pending.get(node), node);
+                if (answer.statusCode() == HttpServletResponse.SC_OK) {
+                    answers.add(JsonCodec.GSON.fromJson(new String(answer.body(), StandardCharsets.UTF_8), type));
+                } else if (answer.statusCode() != HttpServletResponse.SC_NOT_FOUND) {
+                    throw new IOException("Node " + node + " answered " + answer.statusCode());
+                }
+            } catch (IOException e) {
+                log("Failed to query node " + node, e);
+                return null;
+            }
+        }
+        trace.enter(Stage.QUERY);
+        return answers;
+    }
+
+    /**
+     * Adds two matrices of ride counts, element by element, into the first.
+     */
+    private static long[][] add(long[][] total, long[][] part) {
+        for (int lift = 0; lift < Math.min(total.length, part.length); lift++) {
+            for (int bucket = 0; bucket < Math.min(total[lift].length, part[lift].length); bucket++) {
+                total[lift][bucket] += part[lift][bucket];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Writes a 503 Service Unavailable response for a query another node could not answer.
+     *
+     * @param res The HttpServletResponse object that contains the response.
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private void writeNodeUnavailable(HttpServletResponse res) throws IOException {
+        res.setHeader("Retry-After", "1");
+        ResponseWriter.write(res, HttpServletResponse.SC_SERVICE_UNAVAILABLE, ResponseBody.NODE_UNAVAILABLE);
+    }
+}
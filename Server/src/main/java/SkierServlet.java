@@ -1,28 +1,248 @@
-import com.google.gson.Gson;
+import admission.AdaptiveLimiter;
+import cache.CacheKey;
+import cache.ETags;
+import cache.ResponseCache;
+import cluster.ClusterClient;
+import cluster.PartitionedSink;
+import codec.JsonCodec;
+import codec.ResponseBody;
+import codec.ResponseWriter;
+import codec.RideStreamDecoder;
+import com.google.gson.JsonParseException;
+import dedup.IdempotencyWindow;
+import entity.BatchResult;
 import entity.LiftRide;
-import entity.ResponseMsg;
 import entity.SkierVertical;
 import entity.VerticalElement;
+import ingest.DurabilityLevel;
+import ingest.IngestPipeline;
+import ingest.PendingRide;
+import ingest.RideBatch;
+import ingest.RideSink;
+import ingest.SinkChain;
+import ingest.WriteGate;
+import metrics.Endpoint;
+import metrics.ServerMetrics;
+import pool.ThreadCache;
+import query.LeaderboardView;
+import query.LiftUtilizationView;
+import query.UniqueSkierView;
+import query.VerticalView;
+import route.Route;
+import route.RouteKind;
+import route.UrlRouter;
+import storage.ColdTier;
+import storage.DayFreezer;
+import storage.RideStore;
+import trace.RequestTrace;
+import trace.Stage;
+import wal.WriteAheadLog;
 
 import javax.servlet.*;
 import javax.servlet.http.*;
 import javax.servlet.annotation.*;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 
 /**
  * SkierServlet is a servlet that handles HTTP GET and POST requests for skier data.
  * It processes requests related to skier lift rides and vertical information.
  */
-@WebServlet(name = "SkierServlet", value = "/skiers/*")
+@WebServlet(name = "SkierServlet", value = "/skiers/*", asyncSupported = true, loadOnStartup = 1)
 public class SkierServlet extends HttpServlet {
 
+    // Request header carrying the client's key for recognizing retries of a lift-ride POST
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    // Idle objects each cache keeps for requests on virtual threads
+    private static final int POOLED = 256;
+    // Single-ride batch reused by each container thread in sync ingest mode
+    private static final ThreadCache<RideBatch> SINGLE_RIDE = new ThreadCache<>(() -> new RideBatch(1), POOLED);
+    // Route reused by each container thread so routing allocates nothing
+    private static final ThreadCache<Route> ROUTE = new ThreadCache<>(Route::new, POOLED);
+    // Batch reused by each container thread when decoding POST /liftrides
+    private static final ThreadCache<RideBatch> REQUEST_BATCH = new ThreadCache<>(() -> new RideBatch(512), POOLED);
+    // Batch reused by each container thread for the rides of a batch request this node owns
+    private static final ThreadCache<RideBatch> OWNED_BATCH = new ThreadCache<>(() -> new RideBatch(512), POOLED);
+    // Read buffer reused by each container thread when decoding binary ride batches
+    private static final ThreadCache<byte[]> BINARY_BUFFER =
+            new ThreadCache<>(() -> new byte[RideStreamDecoder.BINARY_RECORD_BYTES * 512], POOLED);
+
+    private final UrlRouter router = UrlRouter.skiers();
+
+    private RideStore rideStore;
+    private VerticalView verticalView;
+    private LeaderboardView leaderboardView;
+    private UniqueSkierView uniqueSkierView;
+    private LiftUtilizationView liftUtilizationView;
+    private WriteAheadLog writeAheadLog;
+    private RideSink rideSink;
+    private IngestPipeline ingestPipeline;
+    private DurabilityLevel durability;
+    private ResponseCache responseCache;
+    private AdaptiveLimiter limiter;
+    private DayFreezer dayFreezer;
+    private IdempotencyWindow idempotencyWindow;
+    private ClusterClient cluster;
+
+    /**
+     * Initializes the servlet: creates the in-memory ride store and the query views, maps the frozen
+     * day files, replays the write-ahead log into them and, in async ingest mode, starts the batched
+     * ingest pipeline. Days that receive no rides for a while are frozen to disk in the background.
+     * The ride store and the query views are published as ServletContext attributes for ResortServlet.
+     * In a partitioned deployment, configured by the context parameters "cluster.nodes" (the base URLs of all
+     * nodes), "cluster.self" (this node's base URL) and "cluster.secret" (shared by all nodes, authenticating
+     * their requests to each other), this node stores only the skiers it owns on the consistent-hash ring and
+     * forwards the requests of other skiers to their owner. The context parameter
+     * "data.dir", if set, replaces java.io.tmpdir as the parent of the default data directories, so several
+     * nodes can share a host.
+     * Init parameters: "store.shards", "wal.enabled", "wal.dir", "wal.segmentMB", "wal.fsyncIntervalMs",
+     * "wal.replayThreads", "ingest.mode" (sync or async), "ingest.durability" (accepted or committed),
+     * "ingest.queueCapacity", "ingest.writers", "ingest.batchSize", "cache.maxMB" (0 disables the response cache),
+     * "admission.enabled", "admission.initialLimit", "admission.minLimit", "admission.maxLimit",
+     * "admission.windowMs", "snapshot.enabled", "snapshot.dir", "snapshot.idleSeconds",
+     * "snapshot.intervalSeconds", "snapshot.mergeFiles", "snapshot.maxOpenFiles", "snapshot.maxMappedMB",
+     * "snapshot.summaryEntries", "leaderboard.maxN", "utilization.maxLiftID",
+     * "utilization.maxTime", "utilization.bucketMinutes", "idempotency.enabled", "idempotency.windowSeconds",
+     * "idempotency.expectedKeys", "idempotency.recentKeys" and "cluster.timeoutMs".
+     *
+     * @throws ServletException If a servlet-specific error occurs.
+     */
+    @Override
+    public void init() throws ServletException {
+        rideStore = new RideStore(intParam("store.shards", RideStore.DEFAULT_SHARDS));
+        verticalView = new VerticalView();
+        leaderboardView = new LeaderboardView(intParam("leaderboard.maxN", 100));
+        uniqueSkierView = new UniqueSkierView();
+        int bucketMinutes = intParam("utilization.bucketMinutes", 60);
+        if (bucketMinutes < 1) {
+            throw new ServletException("Invalid utilization.bucketMinutes: " + bucketMinutes + " (must be at least 1)");
+        }
+        liftUtilizationView = new LiftUtilizationView(intParam("utilization.maxLiftID", 40),
+                intParam("utilization.maxTime", 360), bucketMinutes);
+        RideSink views = new SinkChain(verticalView, leaderboardView, uniqueSkierView, liftUtilizationView);
+        RideSink applySink = new SinkChain(rideStore, views);
+        rideSink = applySink;
+
+        if (!"false".equalsIgnoreCase(getInitParameter("snapshot.enabled"))) {
+            Path dayDir = pathParam("snapshot.dir", "skier-days");
+            try {
+                ColdTier tier = new ColdTier(intParam("snapshot.maxOpenFiles", 256),
+                        (long) intParam("snapshot.maxMappedMB", 1024) << 20,
+                        intParam("snapshot.summaryEntries", 1 << 18));
+                dayFreezer = new DayFreezer(rideStore, dayDir, tier, intParam("snapshot.idleSeconds", 300) * 1000L,
+                        intParam("snapshot.mergeFiles", 4), this::log);
+                log("Loaded " + dayFreezer.load(views) + " frozen rides from " + dayDir);
+            } catch (IOException e) {
+                throw new ServletException("Failed to load frozen days from " + dayDir, e);
+            }
+        }
+
+        if (!"false".equalsIgnoreCase(getInitParameter("wal.enabled"))) {
+            Path walDir = pathParam("wal.dir", "skier-wal");
+            try {
+                writeAheadLog = WriteAheadLog.open(walDir,
+                        intParam("wal.segmentMB", 64) << 20,
+                        intParam("wal.fsyncIntervalMs", 50),
+                        applySink,
+                        rideStore::isFrozen,
+                        intParam("wal.replayThreads", Runtime.getRuntime().availableProcessors()));
+            } catch (IOException e) {
+                throw new ServletException("Failed to open write-ahead log in " + walDir, e);
+            }
+            log("Replayed " + writeAheadLog.getReplayedRecords() + " rides from " + walDir);
+            rideSink = new SinkChain(writeAheadLog, applySink);
+        }
+
+        if (dayFreezer != null) {
+            WriteGate gate = new WriteGate(rideSink);
+            rideSink = gate;
+            dayFreezer.start(gate, writeAheadLog, intParam("snapshot.intervalSeconds", 30) * 1000L);
+        }
+
+        int cacheMB = intParam("cache.maxMB", 32);
+        if (cacheMB > 0) {
+            responseCache = new ResponseCache((long) cacheMB << 20, 16);
+        }
+
+        if ("async".equalsIgnoreCase(getInitParameter("ingest.mode"))) {
+            try {
+                durability = DurabilityLevel.parse(getInitParameter("ingest.durability"));
+            } catch (IllegalArgumentException e) {
+                throw new ServletException("Invalid ingest.durability: " + getInitParameter("ingest.durability"), e);
+            }
+            ingestPipeline = new IngestPipeline(rideSink,
+                    intParam("ingest.queueCapacity", 65536),
+                    intParam("ingest.writers", 2),
+                    intParam("ingest.batchSize", 512), this::log);
+        }
+
+        try {
+            cluster = ClusterClient.create(getServletContext().getInitParameter("cluster.nodes"),
+                    getServletContext().getInitParameter("cluster.self"),
+                    getServletContext().getInitParameter("cluster.secret"), intParam("cluster.timeoutMs", 5000));
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid cluster configuration", e);
+        }
+        if (cluster != null) {
+            log("Node " + cluster.self() + " of " + cluster.size());
+            getServletContext().setAttribute(ClusterClient.ATTRIBUTE, cluster);
+        }
+
+        getServletContext().setAttribute(RideStore.ATTRIBUTE, rideStore);
+        getServletContext().setAttribute(LeaderboardView.ATTRIBUTE, leaderboardView);
+        getServletContext().setAttribute(UniqueSkierView.ATTRIBUTE, uniqueSkierView);
+        getServletContext().setAttribute(LiftUtilizationView.ATTRIBUTE, liftUtilizationView);
+
+        if (!"false".equalsIgnoreCase(getInitParameter("admission.enabled"))) {
+            limiter = new AdaptiveLimiter(intParam("admission.initialLimit", 64),
+                    intParam("admission.minLimit", 8),
+                    intParam("admission.maxLimit", 1024),
+                    intParam("admission.windowMs", 100));
+        }
+
+        if (!"false".equalsIgnoreCase(getInitParameter("idempotency.enabled"))) {
+            idempotencyWindow = new IdempotencyWindow(intParam("idempotency.windowSeconds", 300) * 1000L,
+                    intParam("idempotency.expectedKeys", 1 << 20),
+                    intParam("idempotency.recentKeys", 1 << 18));
+        }
+    }
+
+    /**
+     * Stops the ingest pipeline after writing every ride still queued, stops the day freezer,
+     * then syncs and closes the write-ahead log.
+     */
+    @Override
+    public void destroy() {
+        if (ingestPipeline != null) {
+            try {
+                ingestPipeline.shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (dayFreezer != null) {
+            dayFreezer.close();
+        }
+        if (writeAheadLog != null) {
+            try {
+                writeAheadLog.close();
+            } catch (IOException e) {
+                log("Failed to close write-ahead log", e);
+            }
+        }
+    }
+
     /**
      * Handles the HTTP GET request.
-     * Based on the URL path, it validates the request and returns skier vertical information
-     * or a simple "it works" message.
+     * Based on the URL path, it validates the request and returns the skier's total vertical per season,
+     * optionally filtered by the "resort" and "season" query parameters, or the skier's total vertical
+     * for one day. Requests over the admission limit are answered 429 right away.
      *
      * @param req  The HttpServletRequest object that contains the request.
      * @param res  The HttpServletResponse object that contains the response.
@@ -31,44 +251,187 @@ public class SkierServlet extends HttpServlet {
      */
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+        long startNanos = System.nanoTime();
+        RequestTrace trace = RequestTrace.begin(res, startNanos);
+        Endpoint endpoint = Endpoint.OTHER;
         res.setContentType("application/json");
         res.setCharacterEncoding("UTF-8");
         String urlPath = req.getPathInfo();
-        Gson gson = new Gson();
+        boolean admitted = false;
+        Route route = null;
 
-        // Check if the URL is missing or empty
-        if (urlPath == null || urlPath.isEmpty()) {
-            res.setStatus(HttpServletResponse.SC_NOT_FOUND);
-            res.getWriter().write(gson.toJson(new ResponseMsg("Missing Parameter")));
+        try {
+            trace.enter(Stage.ROUTE);
+            // Check if the URL is missing or empty
+            if (urlPath == null || urlPath.isEmpty()) {
+                ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.MISSING_PARAMETER);
+                return;
+            }
+
+            // Route the URL path and dispatch to the matching handler
+            route = ROUTE.acquire();
+            if (!router.route(urlPath, route)) {
+                res.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            endpoint = route.getKind() == RouteKind.SKIER_VERTICAL ? Endpoint.GET_VERTICAL
+                    : route.getKind() == RouteKind.SKIER_DAY ? Endpoint.GET_DAY_VERTICAL : Endpoint.OTHER;
+            trace.endpoint(endpoint.getLabel());
+            trace.enter(Stage.ADMIT);
+            if (limiter != null) {
+                if (!limiter.tryAcquire()) {
+                    writeOverloaded(res);
+                    return;
+                }
+                admitted = true;
+            }
+            if (cluster != null) {
+                trace.enter(Stage.CLUSTER);
+                if (forwardToOwner(req, res, route.getSkierID(), null)) {
+                    return;
+                }
+            }
+            trace.enter(Stage.QUERY);
+            if (route.getKind() == RouteKind.SKIER_VERTICAL) {
+                writeSkierVertical(req, res, route);
+            } else if (route.getKind() == RouteKind.SKIER_DAY) {
+                writeDayVertical(req, res, route);
+            } else {
+                ResponseWriter.write(res, HttpServletResponse.SC_METHOD_NOT_ALLOWED, ResponseBody.METHOD_NOT_ALLOWED);
+            }
+        } finally {
+            if (admitted) {
+                limiter.release(startNanos);
+            }
+            ROUTE.release(route);
+            trace.finish(res.getStatus());
+            ServerMetrics.record(endpoint, res.getStatus(), startNanos);
+        }
+    }
+
+    /**
+     * Writes the skier's total vertical per season from the vertical view.
+     * Answers 400 if a query parameter is not a non-negative number and 404 if the skier has no rides in scope.
+     * Bodies are cached per (skier, resort, season) and validated against the skier's data version,
+     * which also yields the ETag of a 200; a matching If-None-Match is answered with 304 and no body,
+     * but only once the filtered result is known not to be empty.
+     *
+     * @param req     The HttpServletRequest object that contains the request.
+     * @param res     The HttpServletResponse object that contains the response.
+     * @param route   the matched SKIER_VERTICAL route
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private void writeSkierVertical(HttpServletRequest req, HttpServletResponse res, Route route)
+            throws IOException {
+        Integer resortID;
+        Integer seasonID;
+        try {
+            String resort = req.getParameter("resort");
+            String season = req.getParameter("season");
+            resortID = resort == null ? null : Integer.valueOf(resort);
+            seasonID = season == null ? null : Integer.valueOf(season);
+        } catch (NumberFormatException ex) {
+            ResponseWriter.write(res, HttpServletResponse.SC_BAD_REQUEST, ResponseBody.INVALID_PARAMETER);
+            return;
+        }
+        // IDs are never negative like in the path; -1 stands for "any" in the view and the cache key
+        if ((resortID != null && resortID < 0) || (seasonID != null && seasonID < 0)) {
+            ResponseWriter.write(res, HttpServletResponse.SC_BAD_REQUEST, ResponseBody.INVALID_PARAMETER);
             return;
         }
 
-        String[] urlParts = urlPath.split("/");
+        // Read the version before computing, so a racing write leaves a stale entry rather than a wrong one
+        long version = verticalView.version(route.getSkierID());
+        CacheKey key = new CacheKey(RouteKind.SKIER_VERTICAL, route.getSkierID(),
+                resortID == null ? -1 : resortID, seasonID == null ? -1 : seasonID, -1);
+        byte[] body = responseCache == null ? null : responseCache.get(key, version);
+        if (body == null) {
+            List<VerticalElement> verticals = verticalView.verticals(route.getSkierID(), resortID, seasonID);
+            if (verticals.isEmpty()) {
+                ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.DATA_NOT_FOUND);
+                return;
+            }
+            body = JsonCodec.GSON.toJson(new SkierVertical(verticals)).getBytes(StandardCharsets.UTF_8);
+            if (responseCache != null) {
+                responseCache.put(key, version, body);
+            }
+        }
+        // Only now is the answer known to be 200: a filter matching none of the skier's rides is a 404 under
+        // the same version, which must carry no ETag for a later If-None-Match to turn into a 304
+        if (version > 0 && notModified(req, res, ETags.of(RouteKind.SKIER_VERTICAL, version))) {
+            return;
+        }
+        ResponseWriter.write(res, HttpServletResponse.SC_OK, body);
+    }
 
-        // Validate URL path and return response status
-        if (!isUrlValid(urlParts)) {
-            res.setStatus(HttpServletResponse.SC_NOT_FOUND);
-        } else {
-            res.setStatus(HttpServletResponse.SC_OK);
-
-            // Process URL parts if valid
-            if (urlParts.length == 3) {
-                // Example of returning skier vertical information
-                List<VerticalElement> vrl = new ArrayList<>();
-                vrl.add(new VerticalElement("string", 32));
-                SkierVertical skierVertical = new SkierVertical(vrl);
-                res.getWriter().write(gson.toJson(skierVertical));
-            } else {
-                // Return simple "it works" message for other cases
-                res.getWriter().write("it works");
+    /**
+     * Writes the skier's total vertical for one day as a JSON number.
+     * The sum comes from the day's skier indexes on the heap and in the frozen files, so only the skier's own rides are read.
+     * Answers 404 if the skier has no rides that day. Bodies are cached per (resort, season, day, skier)
+     * and validated against the skier's version within the day partition, which also yields the ETag;
+     * a matching If-None-Match is answered with 304 and no body.
+     *
+     * @param req   The HttpServletRequest object that contains the request.
+     * @param res   The HttpServletResponse object that contains the response.
+     * @param route the matched SKIER_DAY route
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private void writeDayVertical(HttpServletRequest req, HttpServletResponse res, Route route) throws IOException {
+        // No ride of a season above the store's maximum is ever accepted
+        if (route.getSeasonID() > RideStore.MAX_SEASON_ID) {
+            ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.DATA_NOT_FOUND);
+            return;
+        }
+        long version = rideStore.skierDayVersion(route.getResortID(), route.getSeasonID(), route.getDayID(),
+                route.getSkierID());
+        if (version == 0) {
+            ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.DATA_NOT_FOUND);
+            return;
+        }
+        if (notModified(req, res, ETags.of(RouteKind.SKIER_DAY, version))) {
+            return;
+        }
+        CacheKey key = new CacheKey(RouteKind.SKIER_DAY, route.getResortID(), route.getSeasonID(),
+                route.getDayID(), route.getSkierID());
+        byte[] body = responseCache == null ? null : responseCache.get(key, version);
+        if (body == null) {
+            long vertical = rideStore.dayVertical(route.getResortID(), route.getSeasonID(), route.getDayID(),
+                    route.getSkierID());
+            body = Long.toString(vertical).getBytes(StandardCharsets.UTF_8);
+            if (responseCache != null) {
+                responseCache.put(key, version, body);
             }
         }
+        ResponseWriter.write(res, HttpServletResponse.SC_OK, body);
+    }
+
+    /**
+     * Sets the ETag and revalidation headers and answers 304 Not Modified if the client's
+     * If-None-Match already names the current representation. Called only once the handler knows it
+     * answers 200, so an error response never carries a validator.
+     *
+     * @param req  The HttpServletRequest object that contains the request.
+     * @param res  The HttpServletResponse object that contains the response.
+     * @param etag the entity tag of the current representation
+     * @return true if a 304 was sent and the handler must not write a body
+     */
+    private boolean notModified(HttpServletRequest req, HttpServletResponse res, String etag) {
+        res.setHeader("ETag", etag);
+        res.setHeader("Cache-Control", "no-cache");
+        if (ETags.matches(req.getHeader("If-None-Match"), etag)) {
+            RequestTrace.beforeBody(res);
+            res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
     }
 
     /**
      * Handles the HTTP POST request.
-     * Processes skier lift ride information from the URL and returns a 201 Created response on success,
-     * or a 400 Bad Request response if there is an error.
+     * Decodes the lift ride from the request body, stores it in the ride store and returns
+     * a 201 Created response on success, or a 400 Bad Request response if the body is not a valid lift ride.
+     * Requests over the admission limit are answered 429 before the body is read. A lift ride sent with an
+     * Idempotency-Key header is applied once however often the client retries it within the dedup window.
      *
      * @param req  The HttpServletRequest object that contains the request.
      * @param res  The HttpServletResponse object that contains the response.
@@ -77,66 +440,377 @@ public class SkierServlet extends HttpServlet {
      */
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+        long startNanos = System.nanoTime();
+        RequestTrace trace = RequestTrace.begin(res, startNanos);
+        Endpoint endpoint = Endpoint.OTHER;
+        boolean answeredLater = false;
+        boolean admitted = false;
         res.setContentType("application/json");
         res.setCharacterEncoding("UTF-8");
         String urlPath = req.getPathInfo();
+        Route route = null;
 
-        // Check if the URL is missing or empty
-        if (urlPath == null || urlPath.isEmpty()) {
-            res.setStatus(HttpServletResponse.SC_NOT_FOUND);
-            res.getWriter().write("missing parameters");
-            return;
+        try {
+            trace.enter(Stage.ROUTE);
+            // Check if the URL is missing or empty
+            if (urlPath == null || urlPath.isEmpty()) {
+                ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.MISSING_PARAMETER);
+                return;
+            }
+
+            // Route the URL path; only the full lift-ride path and the batch path accept POST
+            route = ROUTE.acquire();
+            if (!router.route(urlPath, route) || route.getKind() == RouteKind.SKIER_VERTICAL) {
+                ResponseWriter.write(res, HttpServletResponse.SC_NOT_FOUND, ResponseBody.NOT_FOUND);
+                return;
+            }
+            endpoint = route.getKind() == RouteKind.RIDE_BATCH ? Endpoint.POST_BATCH : Endpoint.POST_RIDE;
+            // Later seasons would share a partition key with earlier ones
+            if (route.getSeasonID() > RideStore.MAX_SEASON_ID) {
+                ResponseWriter.write(res, HttpServletResponse.SC_BAD_REQUEST, ResponseBody.INVALID_PARAMETER);
+                return;
+            }
+            trace.endpoint(endpoint.getLabel());
+            trace.enter(Stage.ADMIT);
+            if (limiter != null) {
+                if (!limiter.tryAcquire()) {
+                    writeOverloaded(res);
+                    return;
+                }
+                admitted = true;
+            }
+            if (route.getKind() == RouteKind.RIDE_BATCH) {
+                postRideBatch(req, res, trace);
+            } else {
+                if (cluster != null) {
+                    trace.enter(Stage.CLUSTER);
+                    if (forwardToOwner(req, res, route.getSkierID(), req.getInputStream())) {
+                        return;
+                    }
+                }
+                trace.enter(Stage.DEDUP);
+                // A retry of a ride that was already applied is answered as the original was, without applying it again
+                String idempotencyKey = idempotencyWindow == null ? null : req.getHeader(IDEMPOTENCY_KEY);
+                if (idempotencyKey != null && !beginIdempotent(res, idempotencyKey)) {
+                    return;
+                }
+                boolean applied = false;
+                try {
+                    // Decode the lift ride straight from the request body
+                    trace.enter(Stage.PARSE);
+                    LiftRide liftRide = JsonCodec.readLiftRide(req.getInputStream());
+                    int resortID = route.getResortID();
+                    int seasonID = route.getSeasonID();
+                    int dayID = route.getDayID();
+                    int skierID = route.getSkierID();
+
+                    trace.enter(Stage.STORE);
+                    if (ingestPipeline != null) {
+                        // The ingest path commits or aborts the idempotency key once the ride's fate is known
+                        String key = idempotencyKey;
+                        idempotencyKey = null;
+                        answeredLater = enqueueRide(req, res, resortID, seasonID, dayID, skierID, liftRide,
+                                key, startNanos);
+                        return;
+                    }
+                    RideBatch batch = SINGLE_RIDE.acquire();
+                    try {
+                        batch.clear();
+                        batch.add(resortID, seasonID, dayID, skierID,
+                                liftRide.getTime(), liftRide.getLiftID(), liftRide.getWaitTime());
+                        rideSink.write(batch);
+                    } finally {
+                        SINGLE_RIDE.release(batch);
+                    }
+                    applied = true;
+                    ResponseWriter.write(res, HttpServletResponse.SC_CREATED, ResponseBody.CREATED);
+                } catch (JsonParseException ex) {
+                    // Handle error and return 400 response
+                    ResponseWriter.write(res, HttpServletResponse.SC_BAD_REQUEST, ResponseBody.FAILED_CREATED);
+                } finally {
+                    if (idempotencyKey != null) {
+                        endIdempotent(idempotencyKey, applied);
+                    }
+                }
+            }
+        } finally {
+            // Requests answered by an ingest writer are released and recorded when the writer answers them
+            // A request answered later is traced up to its hand-off to the ingest queue
+            ROUTE.release(route);
+            trace.finish(res.getStatus());
+            if (!answeredLater) {
+                if (admitted) {
+                    limiter.release(startNanos);
+                }
+                ServerMetrics.record(endpoint, res.getStatus(), startNanos);
+            }
         }
+    }
 
-        String[] urlParts = urlPath.split("/");
+    /**
+     * Handles POST /liftrides: a JSON array of rides, each with its own resort, season, day and skier,
+     * or with Content-Type application/octet-stream a stream of fixed-width little-endian binary records.
+     * Rides are decoded incrementally from the request stream and committed in batches directly to the
+     * ride sink, bypassing the ingest queue. Answers 201 with the number of accepted and rejected rides and
+     * the indexes of the first 1000 rejected ones, or 400 if the body is malformed, reporting the rides
+     * committed before the error.
+     * In a partitioned deployment each ride goes to the node owning its skier; if a node cannot take its
+     * rides the request is answered 503, and rides already sent to other nodes stay committed.
+     *
+     * @param req   The HttpServletRequest object that contains the request.
+     * @param res   The HttpServletResponse object that contains the response.
+     * @param trace the request's trace
+     * @throws IOException If an input or output error occurs.
+     */
+    private void postRideBatch(HttpServletRequest req, HttpServletResponse res, RequestTrace trace)
+            throws IOException {
+        BatchResult result = new BatchResult();
+        int status = HttpServletResponse.SC_CREATED;
+        RideBatch batch = REQUEST_BATCH.acquire();
+        RideBatch owned = cluster == null || cluster.isFromPeer(req) ? null : OWNED_BATCH.acquire();
+        byte[] buffer = null;
+        PartitionedSink partitioned = owned == null ? null : new PartitionedSink(cluster, rideSink, owned);
+        RideSink sink = partitioned == null ? rideSink : partitioned;
+        try {
+            // Rides are decoded and stored batch by batch as the body streams in, so both count as one stage
+            trace.enter(Stage.INGEST);
+            try {
+                String contentType = req.getContentType();
+                if (contentType != null && contentType.startsWith("application/octet-stream")) {
+                    buffer = BINARY_BUFFER.acquire();
+                    RideStreamDecoder.readBinary(req.getInputStream(), buffer, batch, sink, result);
+                } else {
+                    RideStreamDecoder.readJsonArray(req.getInputStream(), batch, sink, result);
+                }
+            } catch (JsonParseException ex) {
+                status = HttpServletResponse.SC_BAD_REQUEST;
+            }
+            if (partitioned != null) {
+                trace.enter(Stage.CLUSTER);
+                try {
+                    partitioned.flush();
+                } catch (IOException | UncheckedIOException e) {
+                    log("Failed to send rides to their owners", e);
+                    writeNodeUnavailable(res);
+                    return;
+                }
+            }
+            ResponseWriter.writeJson(res, status, result);
+        } finally {
+            REQUEST_BATCH.release(batch);
+            OWNED_BATCH.release(owned);
+            BINARY_BUFFER.release(buffer);
+        }
+    }
 
-        // Validate URL path and return response status
-        Gson gson = new Gson();
-        if (!isUrlValid(urlParts)) {
-            res.setStatus(HttpServletResponse.SC_NOT_FOUND);
-            ResponseMsg msg = new ResponseMsg("NOT FOUND");
-            res.getWriter().write(gson.toJson(msg));
-        } else {
+    /**
+     * Puts a decoded ride on the ingest queue.
+     * With ACCEPTED durability the client is answered right away; with COMMITTED durability the request
+     * goes async and is answered by the writer thread once the ride's batch is written, so the container
+     * thread is released immediately. A full queue is answered with 503 Service Unavailable.
+     * The idempotency key, if any, is committed once the ride is accepted and aborted if it is not.
+     *
+     * @param req        The HttpServletRequest object that contains the request.
+     * @param res        The HttpServletResponse object that contains the response.
+     * @param resortID   the resort ID taken from the URL
+     * @param seasonID   the season ID taken from the URL
+     * @param dayID      the day ID taken from the URL
+     * @param skierID    the skier ID taken from the URL
+     * @param liftRide   the decoded lift ride
+     * @param idempotencyKey the request's Idempotency-Key reserved by beginIdempotent(), or null
+     * @param startNanos the System.nanoTime() taken when the request arrived
+     * @return true if the request went async and will be answered by an ingest writer
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private boolean enqueueRide(HttpServletRequest req, HttpServletResponse res, int resortID, int seasonID,
+                                int dayID, int skierID, LiftRide liftRide, String idempotencyKey,
+                                long startNanos) throws IOException {
+        if (durability == DurabilityLevel.ACCEPTED) {
+            PendingRide pending = new PendingRide(resortID, seasonID, dayID, skierID,
+                    liftRide.getTime(), liftRide.getLiftID(), liftRide.getWaitTime(), null);
+            boolean accepted = ingestPipeline.submit(pending);
+            if (idempotencyKey != null) {
+                endIdempotent(idempotencyKey, accepted);
+            }
+            if (accepted) {
+                ResponseWriter.write(res, HttpServletResponse.SC_CREATED, ResponseBody.CREATED);
+            } else {
+                writeBusy(res);
+            }
+            return false;
+        }
+
+        // The writer thread answers with the stages timed so far plus the time the ride spent queued
+        String timing = RequestTrace.current().handOff();
+        long handOffNanos = System.nanoTime();
+        AsyncContext asyncContext = req.startAsync();
+        PendingRide pending = new PendingRide(resortID, seasonID, dayID, skierID,
+                liftRide.getTime(), liftRide.getLiftID(), liftRide.getWaitTime(), committed -> {
+            HttpServletResponse asyncRes = (HttpServletResponse) asyncContext.getResponse();
+            if (idempotencyKey != null) {
+                endIdempotent(idempotencyKey, committed);
+            }
+            if (timing != null) {
+                long now = System.nanoTime();
+                asyncRes.setHeader("Server-Timing", RequestTrace.appendTiming(
+                        RequestTrace.appendTiming(timing, "queue", now - handOffNanos), "total", now - startNanos));
+            }
             try {
-                // Process and create a dummy LiftRide object for demonstration
-                LiftRide liftRide = new LiftRide(217, 21, 5000);
-                ResponseMsg msg = new ResponseMsg("Successful Created");
-                String msgJsonString = gson.toJson(msg);
-                PrintWriter out = res.getWriter();
-                out.print(msgJsonString);
-                out.flush();
-                res.setStatus(HttpServletResponse.SC_CREATED);
-            } catch (Exception ex) {
-                // Handle error and return 400 response
-                res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                ResponseMsg msg = new ResponseMsg("Failed Created");
-                String msgJsonString = gson.toJson(msg);
-                PrintWriter out = res.getWriter();
-                out.print(msgJsonString);
-                out.flush();
-            }
-        }
-    }
-
-    /**
-     * Validates the URL path to ensure it matches the expected format and contains valid values.
-     *
-     * @param urlPath A String array representing the parts of the URL path.
-     * @return boolean - true if the URL path is valid, false otherwise.
-     */
-    private boolean isUrlValid(String[] urlPath) {
-        // Example URL path: "/1/seasons/2019/days/1/skiers/123"
-        if (urlPath.length == 3) {
-            // If the length is 3, verify if the second part is a valid number and contains "vertical"
-            return urlPath[1].chars().allMatch(Character::isDigit) && urlPath[2].contains("vertical");
-        } else if (urlPath.length == 8) {
-            // Validate that the URL has all necessary parts and they are properly formatted
-            return urlPath[1].chars().allMatch(Character::isDigit) && urlPath[2].equals("seasons") &&
-                    urlPath[3].chars().allMatch(Character::isDigit) && urlPath[4].equals("days") &&
-                    urlPath[5].chars().allMatch(Character::isDigit) && urlPath[6].equals("skiers") &&
-                    urlPath[7].chars().allMatch(Character::isDigit) && Integer.parseInt(urlPath[5]) >= 1 &&
-                    Integer.parseInt(urlPath[5]) <= 365;
+                if (committed) {
+                    ResponseWriter.write(asyncRes, HttpServletResponse.SC_CREATED, ResponseBody.CREATED);
+                } else {
+                    ResponseWriter.write(asyncRes, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ResponseBody.FAILED_CREATED);
+                }
+            } catch (IOException e) {
+                log("Failed to answer ride of skier " + skierID + " after ingest", e);
+            } finally {
+                int status = asyncRes.getStatus();
+                asyncContext.complete();
+                if (limiter != null) {
+                    limiter.release(startNanos);
+                }
+                ServerMetrics.record(Endpoint.POST_RIDE, status, startNanos);
+            }
+        });
+        if (!ingestPipeline.submit(pending)) {
+            if (idempotencyKey != null) {
+                endIdempotent(idempotencyKey, false);
+            }
+            writeBusy(res);
+            asyncContext.complete();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Forwards a request for one skier to the node owning the skier, unless this node owns it or the request
+     * was already forwarded by another node. A node that cannot be reached is answered 503.
+     *
+     * @param req     The HttpServletRequest object that contains the request.
+     * @param res     The HttpServletResponse object that contains the response.
+     * @param skierID the skier the request is about
+     * @param body    the request body to forward, or null for none
+     * @return true if the request was forwarded and answered
+     * @throws IOException If an input or output error occurs while reading the request or writing the response.
+     */
+    private boolean forwardToOwner(HttpServletRequest req, HttpServletResponse res, int skierID, InputStream body)
+            throws IOException {
+        int owner = cluster.ownerOf(skierID);
+        if (owner == cluster.self() || cluster.isFromPeer(req)) {
+            return false;
+        }
+        byte[] bytes = body == null ? null : body.readAllBytes();
+        try {
+            cluster.forward(req, res, owner, bytes);
+        } catch (IOException e) {
+            log("Failed to forward to node " + owner, e);
+            writeNodeUnavailable(res);
+        }
+        return true;
+    }
+
+    /**
+     * Writes a 503 Service Unavailable response for a request another node could not serve.
+     *
+     * @param res The HttpServletResponse object that contains the response.
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private void writeNodeUnavailable(HttpServletResponse res) throws IOException {
+        res.setHeader("Retry-After", "1");
+        ResponseWriter.write(res, HttpServletResponse.SC_SERVICE_UNAVAILABLE, ResponseBody.NODE_UNAVAILABLE);
+    }
+
+    /**
+     * Reserves a request's idempotency key, or answers the request if it is a retry: 201 with an
+     * Idempotent-Replayed header if the original was applied, or 409 Conflict with a Retry-After hint
+     * if the original is still in flight, so the client retries once its outcome is known.
+     *
+     * @param res The HttpServletResponse object that contains the response.
+     * @param key the Idempotency-Key header value
+     * @return true if the key is new and the request should be applied
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private boolean beginIdempotent(HttpServletResponse res, String key) throws IOException {
+        IdempotencyWindow.Status status = idempotencyWindow.begin(key);
+        if (status == IdempotencyWindow.Status.DUPLICATE) {
+            res.setHeader("Idempotent-Replayed", "true");
+            ResponseWriter.write(res, HttpServletResponse.SC_CREATED, ResponseBody.CREATED);
+            return false;
+        }
+        if (status == IdempotencyWindow.Status.IN_FLIGHT) {
+            res.setHeader("Retry-After", "1");
+            ResponseWriter.write(res, HttpServletResponse.SC_CONFLICT, ResponseBody.REQUEST_IN_PROGRESS);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Releases a key reserved by beginIdempotent(): remembered if the ride was applied, forgotten otherwise.
+     *
+     * @param key     the Idempotency-Key header value
+     * @param applied whether the ride was applied
+     */
+    private void endIdempotent(String key, boolean applied) {
+        if (applied) {
+            idempotencyWindow.commit(key);
+        } else {
+            idempotencyWindow.abort(key);
+        }
+    }
+
+    /**
+     * Writes a 429 Too Many Requests response for a request rejected by admission control,
+     * with a Retry-After hint derived from the limiter's baseline latency.
+     *
+     * @param res The HttpServletResponse object that contains the response.
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private void writeOverloaded(HttpServletResponse res) throws IOException {
+        res.setHeader("Retry-After", Integer.toString(limiter.retryAfterSeconds()));
+        ResponseWriter.write(res, 429, ResponseBody.TOO_MANY_REQUESTS);
+    }
+
+    /**
+     * Writes a 503 Service Unavailable response telling the client to retry shortly.
+     *
+     * @param res The HttpServletResponse object that contains the response.
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    private void writeBusy(HttpServletResponse res) throws IOException {
+        res.setHeader("Retry-After", "1");
+        ResponseWriter.write(res, HttpServletResponse.SC_SERVICE_UNAVAILABLE, ResponseBody.SERVER_BUSY);
+    }
+
+    /**
+     * Reads a directory init parameter.
+     *
+     * @param name       the parameter name
+     * @param defaultDir the directory under "data.dir" or java.io.tmpdir used when the parameter is not set
+     * @return the directory path
+     */
+    private Path pathParam(String name, String defaultDir) {
+        String value = getInitParameter(name);
+        String base = getServletContext().getInitParameter("data.dir");
+        return value != null ? Paths.get(value)
+                : Paths.get(base != null ? base : System.getProperty("java.io.tmpdir"), defaultDir);
+    }
+
+    /**
+     * Reads an integer init parameter.
+     *
+     * @param name         the parameter name
+     * @param defaultValue the value used when the parameter is not set
+     * @return the parameter value
+     * @throws ServletException if the parameter is not an integer
+     */
+    private int intParam(String name, int defaultValue) throws ServletException {
+        String value = getInitParameter(name);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ServletException("Invalid " + name + ": " + value, e);
         }
-        return false;
     }
 }
@@ -0,0 +1,154 @@
+package admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AdaptiveLimiter is a concurrency limit that adapts to observed latency, in the style of a gradient limiter.
+ * It compares the recent average latency with a slowly moving long-term baseline: while latency stays near
+ * the baseline the limit grows by about sqrt(limit) per window; when requests start queueing and latency
+ * rises, the limit shrinks in proportion. Requests over the limit are rejected immediately instead of
+ * waiting in the container's queue, which keeps latency bounded for the requests that are admitted.
+ *
+ * Admission is a single CAS on the in-flight counter. Latency samples are summed in striped adders and
+ * folded into the limit at most once per window by whichever thread finds the window elapsed.
+ */
+public class AdaptiveLimiter {
+
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double BASELINE_WEIGHT = 0.05;
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder windowSumNanos = new LongAdder();
+    private final LongAdder windowCount = new LongAdder();
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    private volatile double limit;
+    private volatile long windowStart = System.nanoTime();
+    // Written only under updateLock, but also read by retryAfterSeconds() on rejected requests
+    private volatile double baselineNanos;
+    private int windowMaxInFlight;
+
+    /**
+     * Constructs an AdaptiveLimiter.
+     *
+     * @param initialLimit the starting concurrency limit
+     * @param minLimit     the limit never drops below this
+     * @param maxLimit     the limit never grows above this
+     * @param windowMillis how often the limit is recomputed from latency samples
+     */
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, long windowMillis) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowNanos = windowMillis * 1_000_000L;
+    }
+
+    /**
+     * Tries to admit a request.
+     *
+     * @return true if the request is admitted and must later call release(), false if it must be rejected
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                if (current + 1 > windowMaxInFlight) {
+                    // Racy on purpose: an approximate peak is enough to tell whether the limit was used
+                    windowMaxInFlight = current + 1;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases an admitted request and records its latency.
+     *
+     * @param startNanos the System.nanoTime() taken when the request was admitted
+     */
+    public void release(long startNanos) {
+        inFlight.decrementAndGet();
+        long now = System.nanoTime();
+        windowSumNanos.add(now - startNanos);
+        windowCount.increment();
+        if (now - windowStart >= windowNanos && updateLock.tryLock()) {
+            try {
+                updateLimit(now);
+            } finally {
+                updateLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     *
+     * @return the limit
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of admitted requests still in flight.
+     *
+     * @return the in-flight count
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Suggests how many seconds a rejected client should wait, from the current baseline latency.
+     *
+     * @return the Retry-After value in seconds, at least 1
+     */
+    public int retryAfterSeconds() {
+        return (int) Math.max(1, Math.ceil(baselineNanos * 10 / 1e9));
+    }
+
+    /**
+     * Folds the window's latency samples into the limit. Called with updateLock held.
+     *
+     * @param now the current System.nanoTime()
+     */
+    private void updateLimit(long now) {
+        long count = windowCount.sumThenReset();
+        long sum = windowSumNanos.sumThenReset();
+        int peak = windowMaxInFlight;
+        windowMaxInFlight = 0;
+        windowStart = now;
+        if (count == 0) {
+            return;
+        }
+
+        double shortNanos = (double) sum / count;
+        baselineNanos = baselineNanos == 0 ? shortNanos
+                : baselineNanos * (1 - BASELINE_WEIGHT) + shortNanos * BASELINE_WEIGHT;
+
+        double current = limit;
+        // Only grow when the limit was actually reached, so an idle server does not inflate it
+        if (shortNanos <= baselineNanos && peak * 2 < current) {
+            return;
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, baselineNanos / shortNanos));
+        double target = current * gradient + Math.sqrt(current);
+        double next = current * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+
+        // Let the baseline drift toward the recent latency when the server is overloaded for a long time
+        if (gradient == MIN_GRADIENT) {
+            baselineNanos = baselineNanos * 0.9 + shortNanos * 0.1;
+        }
+    }
+}
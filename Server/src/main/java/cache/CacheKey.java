@@ -0,0 +1,46 @@
+package cache;
+
+import route.RouteKind;
+
+/**
+ * CacheKey identifies one cacheable GET response: the route kind plus up to four int arguments.
+ * Unused arguments are -1.
+ */
+public final class CacheKey {
+
+    private final RouteKind kind;
+    private final int a;
+    private final int b;
+    private final int c;
+    private final int d;
+
+    public CacheKey(RouteKind kind, int a, int b, int c, int d) {
+        this.kind = kind;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+        CacheKey other = (CacheKey) o;
+        return kind == other.kind && a == other.a && b == other.b && c == other.c && d == other.d;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = kind.ordinal();
+        h = h * 31 + a;
+        h = h * 31 + b;
+        h = h * 31 + c;
+        h = h * 31 + d;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,67 @@
+package cache;
+
+import route.RouteKind;
+
+/**
+ * ETags builds entity tags from data versions and evaluates If-None-Match headers.
+ * A tag is derived from the same version that validates the response cache, so it changes exactly
+ * when a ride of the skier is ingested.
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    /**
+     * Builds the entity tag of a response.
+     *
+     * @param kind    the route kind of the response
+     * @param version the data version the response reflects
+     * @return the quoted entity tag
+     */
+    public static String of(RouteKind kind, long version) {
+        return "\"" + kind.ordinal() + '-' + Long.toString(version, 36) + '"';
+    }
+
+    /**
+     * Checks whether an If-None-Match header matches the entity tag.
+     * The header may list several tags, use weak tags or be "*".
+     *
+     * @param ifNoneMatch the header value, may be null
+     * @param etag        the current entity tag
+     * @return true if the client already has the current representation
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        int length = ifNoneMatch.length();
+        int pos = 0;
+        while (pos < length) {
+            // Skip separators and an optional weak prefix, then compare the tag in place
+            char c = ifNoneMatch.charAt(pos);
+            if (c == ' ' || c == ',') {
+                pos++;
+                continue;
+            }
+            if (c == '*') {
+                return true;
+            }
+            if (ifNoneMatch.startsWith("W/", pos)) {
+                pos += 2;
+            }
+            if (ifNoneMatch.startsWith(etag, pos)) {
+                int end = pos + etag.length();
+                if (end == length || ifNoneMatch.charAt(end) == ',' || ifNoneMatch.charAt(end) == ' ') {
+                    return true;
+                }
+            }
+            int next = ifNoneMatch.indexOf(',', pos);
+            if (next < 0) {
+                return false;
+            }
+            pos = next + 1;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,119 @@
+package cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ResponseCache keeps pre-serialized UTF-8 response bodies so a repeated GET skips aggregation and
+ * JSON serialization. Every entry carries the data version it was computed at; a lookup with a newer
+ * version misses and drops the entry, so writes invalidate without any explicit purge and a stale
+ * answer is never served.
+ *
+ * The cache is split into segments, each an access-ordered LinkedHashMap under its own lock with an
+ * equal share of the byte budget; the least recently used entries of a segment are evicted first.
+ */
+public class ResponseCache {
+
+    private static final int ENTRY_OVERHEAD = 96;
+
+    /**
+     * A cached body and the version it is valid for.
+     */
+    private static final class Entry {
+        final long version;
+        final byte[] body;
+
+        Entry(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+
+    /**
+     * One independently locked LRU segment.
+     */
+    private static final class Segment {
+        final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+        long bytes;
+    }
+
+    private final Segment[] segments;
+    private final long maxSegmentBytes;
+
+    /**
+     * Constructs a ResponseCache.
+     *
+     * @param maxBytes     the total byte budget over all entries
+     * @param segmentCount the number of independently locked segments, rounded up to a power of two
+     */
+    public ResponseCache(long maxBytes, int segmentCount) {
+        int count = segmentCount <= 1 ? 1 : Integer.highestOneBit(segmentCount - 1) << 1;
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+        maxSegmentBytes = maxBytes / count;
+    }
+
+    /**
+     * Returns the cached body for the key if it was computed at the given version.
+     *
+     * @param key     the response key
+     * @param version the current data version of the response
+     * @return the body, or null on a miss or if the cached entry is stale
+     */
+    public byte[] get(CacheKey key, long version) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Entry entry = segment.entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.version != version) {
+                segment.entries.remove(key);
+                segment.bytes -= sizeOf(entry);
+                return null;
+            }
+            return entry.body;
+        }
+    }
+
+    /**
+     * Caches a body computed at the given version. The version must be read before computing the
+     * body, so a write racing with the computation leaves an entry that the next lookup discards.
+     *
+     * @param key     the response key
+     * @param version the data version the body was computed at
+     * @param body    the UTF-8 response body
+     */
+    public void put(CacheKey key, long version, byte[] body) {
+        Entry entry = new Entry(version, body);
+        long size = sizeOf(entry);
+        if (size > maxSegmentBytes) {
+            return;
+        }
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Entry previous = segment.entries.put(key, entry);
+            if (previous != null) {
+                segment.bytes -= sizeOf(previous);
+            }
+            segment.bytes += size;
+            Iterator<Map.Entry<CacheKey, Entry>> eldest = segment.entries.entrySet().iterator();
+            while (segment.bytes > maxSegmentBytes && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                eldest.remove();
+                segment.bytes -= sizeOf(evicted);
+            }
+        }
+    }
+
+    private Segment segmentFor(CacheKey key) {
+        return segments[key.hashCode() & (segments.length - 1)];
+    }
+
+    private static long sizeOf(Entry entry) {
+        return entry.body.length + ENTRY_OVERHEAD;
+    }
+}
@@ -0,0 +1,269 @@
+package cluster;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * ClusterClient is this node's view of a partitioned deployment: the hash ring of all nodes, which of them
+ * this node is, and an HTTP client for talking to the others. Nodes are named by their base URL, such as
+ * http://10.0.0.5:8080/Server_war, and every node must be configured with the same list in the same order.
+ *
+ * Requests a node sends to another carry the LOCAL_HEADER, telling the receiver to answer from its own data
+ * without routing again, so a request is forwarded at most once even if two nodes disagree on the ring.
+ * They also carry the cluster's shared secret in the SECRET_HEADER; the LOCAL_HEADER of a request without it
+ * is ignored, so an outside client cannot store rides on a node that does not own the skier.
+ */
+public class ClusterClient {
+
+    public static final String ATTRIBUTE = ClusterClient.class.getName();
+    public static final String LOCAL_HEADER = "X-Cluster-Local";
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final String[] REQUEST_HEADERS = {"Content-Type", "Idempotency-Key", "If-None-Match"};
+    private static final String[] RESPONSE_HEADERS = {"ETag", "Cache-Control", "Retry-After", "Idempotent-Replayed",
+            "X-Next-Cursor"};
+
+    private final HashRing ring;
+    private final int self;
+    private final String secret;
+    private final byte[] secretBytes;
+    private final HttpClient http;
+    private final Duration timeout;
+
+    /**
+     * Constructs a ClusterClient.
+     *
+     * @param ring          the ring of all nodes
+     * @param self          the index of this node on the ring
+     * @param secret        the secret shared by all nodes, proving that a request comes from one of them
+     * @param timeoutMillis how long a request to another node may take
+     */
+    public ClusterClient(HashRing ring, int self, String secret, int timeoutMillis) {
+        this.ring = ring;
+        this.self = self;
+        this.secret = secret;
+        this.secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    /**
+     * Creates the client from its configuration.
+     *
+     * @param nodes         the comma-separated base URLs of all nodes, or null for a single-node deployment
+     * @param self          the base URL of this node, which must be one of them
+     * @param secret        the secret shared by all nodes
+     * @param timeoutMillis how long a request to another node may take
+     * @return the client, or null if no nodes are configured
+     * @throws IllegalArgumentException if this node is not in the list or the secret is missing
+     */
+    public static ClusterClient create(String nodes, String self, String secret, int timeoutMillis) {
+        if (nodes == null || nodes.trim().isEmpty()) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        for (String node : nodes.split(",")) {
+            names.add(trimSlash(node.trim()));
+        }
+        HashRing ring = new HashRing(names, VIRTUAL_NODES);
+        int index = self == null ? -1 : ring.indexOf(trimSlash(self.trim()));
+        if (index < 0) {
+            throw new IllegalArgumentException("cluster.self " + self + " is not one of cluster.nodes " + nodes);
+        }
+        if (secret == null || secret.trim().isEmpty()) {
+            throw new IllegalArgumentException("cluster.secret must be set when cluster.nodes is");
+        }
+        return new ClusterClient(ring, index, secret.trim(), timeoutMillis);
+    }
+
+    /**
+     * Returns whether a request came from another node and must be answered from local data only:
+     * it carries the LOCAL_HEADER and the cluster's secret. The secret is compared in constant time.
+     *
+     * @param req the request
+     * @return true if the request was sent by another node
+     */
+    public boolean isFromPeer(HttpServletRequest req) {
+        String presented = req.getHeader(SECRET_HEADER);
+        return req.getHeader(LOCAL_HEADER) != null && presented != null
+                && MessageDigest.isEqual(secretBytes, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the node owning a skier.
+     *
+     * @param skierID the skier ID
+     * @return the node index
+     */
+    public int ownerOf(int skierID) {
+        return ring.ownerOf(skierID);
+    }
+
+    public int self() {
+        return self;
+    }
+
+    public int size() {
+        return ring.size();
+    }
+
+    /**
+     * Sends a request to the node that owns it and copies the node's answer into the response:
+     * status, the headers clients rely on and the body.
+     *
+     * @param req  the request to forward; its servlet path, path info and query string are kept
+     * @param res  the response to fill
+     * @param node the node to send to
+     * @param body the request body, or null for none
+     * @throws IOException if the node cannot be reached or does not answer in time
+     */
+    public void forward(HttpServletRequest req, HttpServletResponse res, int node, byte[] body) throws IOException {
+        HttpRequest.Builder request = request(node, pathOf(req))
+                .method(req.getMethod(), body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body));
+        for (String header : REQUEST_HEADERS) {
+            String value = req.getHeader(header);
+            if (value != null) {
+                request.header(header, value);
+            }
+        }
+        HttpResponse<byte[]> answer = send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        res.setStatus(answer.statusCode());
+        copyHeaders(answer, res);
+        byte[] bytes = answer.body();
+        res.setContentLength(bytes.length);
+        res.getOutputStream().write(bytes);
+    }
+
+    /**
+     * Sends a GET for local data to another node, returning as soon as the request is sent.
+     *
+     * @param node         the node to ask
+     * @param pathAndQuery the path below the node's base URL, with its query string
+     * @return the pending answer
+     */
+    public CompletableFuture<HttpResponse<byte[]>> getLocalAsync(int node, String pathAndQuery) {
+        return http.sendAsync(request(node, pathAndQuery).GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Sends a GET for local data to another node and returns the answer with its body still unread.
+     *
+     * @param node         the node to ask
+     * @param pathAndQuery the path below the node's base URL, with its query string
+     * @return the answer; the caller must read or close its body
+     * @throws IOException if the node cannot be reached or does not answer in time
+     */
+    public HttpResponse<InputStream> getLocalStream(int node, String pathAndQuery) throws IOException {
+        return send(request(node, pathAndQuery).GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * Sends rides in the binary batch format to another node's batch endpoint.
+     *
+     * @param node    the node owning the rides
+     * @param records the encoded records
+     * @param length  the number of bytes to send
+     * @return the pending answer
+     */
+    public CompletableFuture<HttpResponse<Void>> postRidesAsync(int node, byte[] records, int length) {
+        HttpRequest request = request(node, "/skiers/liftrides")
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(records, 0, length))
+                .build();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    /**
+     * Copies the headers clients rely on from another node's answer.
+     *
+     * @param answer the node's answer
+     * @param res    the response to fill
+     */
+    public void copyHeaders(HttpResponse<?> answer, HttpServletResponse res) {
+        answer.headers().firstValue("Content-Type").ifPresent(res::setContentType);
+        for (String header : RESPONSE_HEADERS) {
+            answer.headers().firstValue(header).ifPresent(value -> res.setHeader(header, value));
+        }
+    }
+
+    /**
+     * Copies a streamed body to the response and closes it.
+     *
+     * @param body the body stream
+     * @param out  the response stream
+     * @throws IOException if reading or writing fails
+     */
+    public static void copy(InputStream body, OutputStream out) throws IOException {
+        try (InputStream in = body) {
+            in.transferTo(out);
+        }
+    }
+
+    /**
+     * Waits for an answer and checks that the node accepted the request.
+     *
+     * @param pending the pending answer
+     * @param node    the node that was asked, for the error message
+     * @return the answer
+     * @throws IOException if the request failed or the node answered with a server error
+     */
+    public <T> HttpResponse<T> await(CompletableFuture<HttpResponse<T>> pending, int node) throws IOException {
+        HttpResponse<T> answer;
+        try {
+            answer = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for " + ring.node(node), e);
+        } catch (ExecutionException e) {
+            throw new IOException("Request to " + ring.node(node) + " failed", e.getCause());
+        }
+        if (answer.statusCode() >= 500) {
+            throw new IOException(ring.node(node) + " answered " + answer.statusCode());
+        }
+        return answer;
+    }
+
+    private HttpRequest.Builder request(int node, String pathAndQuery) {
+        return HttpRequest.newBuilder(URI.create(ring.node(node) + pathAndQuery))
+                .timeout(timeout)
+                .header(LOCAL_HEADER, ring.node(self))
+                .header(SECRET_HEADER, secret);
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return http.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted sending to " + request.uri(), e);
+        }
+    }
+
+    private static String pathOf(HttpServletRequest req) {
+        String path = req.getServletPath() + (req.getPathInfo() == null ? "" : req.getPathInfo());
+        return req.getQueryString() == null ? path : path + "?" + req.getQueryString();
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -0,0 +1,103 @@
+package cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * HashRing assigns skierIDs to nodes by consistent hashing. Each node is placed on a 64-bit ring at many
+ * virtual points; a skier belongs to the node owning the first point at or after the skier's hash. Adding
+ * a node therefore moves only the skiers falling into its new arcs, about 1/N of them, and the virtual
+ * points keep the arcs of every node close to equal.
+ */
+public class HashRing {
+
+    private final String[] nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * Constructs a HashRing.
+     *
+     * @param nodes        the node names, such as their base URLs; every node must use the same list
+     * @param virtualNodes the number of points per node
+     */
+    public HashRing(List<String> nodes, int virtualNodes) {
+        this.nodes = nodes.toArray(new String[0]);
+        int count = this.nodes.length * virtualNodes;
+        long[] hashes = new long[count];
+        Integer[] order = new Integer[count];
+        for (int node = 0; node < this.nodes.length; node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                int i = node * virtualNodes + v;
+                hashes[i] = hash(this.nodes[node] + "#" + v);
+                order[i] = i;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        this.points = new long[count];
+        this.owners = new int[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = order[i] / virtualNodes;
+        }
+    }
+
+    /**
+     * Returns the node owning a skier.
+     *
+     * @param skierID the skier ID
+     * @return the node index
+     */
+    public int ownerOf(int skierID) {
+        int i = Arrays.binarySearch(points, mix(skierID));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    /**
+     * Returns the name of a node.
+     *
+     * @param index the node index
+     * @return the node name
+     */
+    public String node(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * Returns the index of a node.
+     *
+     * @param name the node name
+     * @return the node index, or -1 if the node is not on the ring
+     */
+    public int indexOf(String name) {
+        return Arrays.asList(nodes).indexOf(name);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Hashes a node point name: FNV-1a over its UTF-8 bytes followed by the SplitMix64 finalizer.
+     */
+    private static long hash(String name) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * The SplitMix64 finalizer, which spreads sequential skier IDs over the whole ring.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
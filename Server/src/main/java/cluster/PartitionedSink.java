@@ -0,0 +1,154 @@
+package cluster;
+
+import ingest.RideBatch;
+import ingest.RideSink;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * PartitionedSink splits the rides of a batch request by owning node. Rides of skiers this node owns go to
+ * the local sink; the others are encoded as binary batch records per node and sent to their owner whenever
+ * a node's buffer fills, without waiting for the answer. flush() sends what is left and waits for every node.
+ * Once a node has failed, rides for other nodes are dropped rather than sent and flush() reports the failure,
+ * so decoding never fails half-way because of another node. One instance serves one request.
+ */
+public class PartitionedSink implements RideSink {
+
+    private static final int RECORD_BYTES = 28;
+    private static final int RECORDS_PER_REQUEST = 1024;
+    // Pending requests are awaited once this many are in flight, bounding the memory a large batch holds
+    private static final int MAX_PENDING = 16;
+
+    private final ClusterClient cluster;
+    private final RideSink local;
+    private final RideBatch localBatch;
+    private final byte[][] buffers;
+    private final int[] lengths;
+    private final List<CompletableFuture<HttpResponse<Void>>> pending = new ArrayList<>();
+    private final List<Integer> pendingNodes = new ArrayList<>();
+    private IOException failure;
+
+    /**
+     * Constructs a PartitionedSink.
+     *
+     * @param cluster    the cluster
+     * @param local      the sink for rides this node owns
+     * @param localBatch a reusable batch for the local rides
+     */
+    public PartitionedSink(ClusterClient cluster, RideSink local, RideBatch localBatch) {
+        this.cluster = cluster;
+        this.local = local;
+        this.localBatch = localBatch;
+        this.buffers = new byte[cluster.size()][];
+        this.lengths = new int[cluster.size()];
+    }
+
+    /**
+     * Routes every ride of the batch to its owner.
+     *
+     * @param batch the rides
+     */
+    @Override
+    public void write(RideBatch batch) {
+        localBatch.clear();
+        for (int i = 0; i < batch.size(); i++) {
+            int node = cluster.ownerOf(batch.skierID(i));
+            if (node == cluster.self()) {
+                localBatch.add(batch.resortID(i), batch.seasonID(i), batch.dayID(i), batch.skierID(i),
+                        batch.time(i), batch.liftID(i), batch.waitTime(i));
+                if (localBatch.isFull()) {
+                    local.write(localBatch);
+                    localBatch.clear();
+                }
+            } else if (failure == null) {
+                append(node, batch, i);
+            }
+        }
+        if (localBatch.size() > 0) {
+            local.write(localBatch);
+            localBatch.clear();
+        }
+    }
+
+    /**
+     * Sends the rides still buffered and waits until every node has taken its rides.
+     *
+     * @throws IOException if a node could not be reached or failed to take its rides
+     */
+    public void flush() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        for (int node = 0; node < buffers.length; node++) {
+            if (lengths[node] > 0) {
+                send(node);
+            }
+        }
+        awaitPending();
+    }
+
+    private void append(int node, RideBatch batch, int i) {
+        if (buffers[node] == null) {
+            buffers[node] = new byte[RECORDS_PER_REQUEST * RECORD_BYTES];
+        }
+        byte[] buffer = buffers[node];
+        int pos = lengths[node];
+        pos = putInt(buffer, pos, batch.resortID(i));
+        pos = putInt(buffer, pos, batch.seasonID(i));
+        pos = putInt(buffer, pos, batch.dayID(i));
+        pos = putInt(buffer, pos, batch.skierID(i));
+        pos = putInt(buffer, pos, batch.time(i));
+        pos = putInt(buffer, pos, batch.liftID(i));
+        lengths[node] = putInt(buffer, pos, batch.waitTime(i));
+        if (lengths[node] == buffer.length) {
+            send(node);
+        }
+    }
+
+    /**
+     * Sends a node's buffer and hands it off; the node gets a fresh buffer for its next rides.
+     * If an earlier request failed, the failure is kept for flush() and the buffer is dropped.
+     */
+    private void send(int node) {
+        if (pending.size() >= MAX_PENDING) {
+            try {
+                awaitPending();
+            } catch (IOException e) {
+                failure = e;
+                buffers[node] = null;
+                lengths[node] = 0;
+                return;
+            }
+        }
+        pending.add(cluster.postRidesAsync(node, buffers[node], lengths[node]));
+        pendingNodes.add(node);
+        buffers[node] = null;
+        lengths[node] = 0;
+    }
+
+    private void awaitPending() throws IOException {
+        try {
+            for (int i = 0; i < pending.size(); i++) {
+                HttpResponse<Void> answer = cluster.await(pending.get(i), pendingNodes.get(i));
+                if (answer.statusCode() != 201) {
+                    throw new IOException("Node " + pendingNodes.get(i) + " answered " + answer.statusCode());
+                }
+            }
+        } finally {
+            pending.clear();
+            pendingNodes.clear();
+        }
+    }
+
+    private static int putInt(byte[] buffer, int pos, int value) {
+        buffer[pos] = (byte) value;
+        buffer[pos + 1] = (byte) (value >>> 8);
+        buffer[pos + 2] = (byte) (value >>> 16);
+        buffer[pos + 3] = (byte) (value >>> 24);
+        return pos + 4;
+    }
+}
@@ -0,0 +1,53 @@
+package codec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import entity.LiftRide;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JsonCodec holds the single Gson instance shared by all servlets.
+ * Gson is thread-safe once built, so it is created once instead of per request.
+ */
+public final class JsonCodec {
+
+    public static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(LiftRide.class, new LiftRideAdapter())
+            .create();
+
+    private static final LiftRideAdapter LIFT_RIDE_ADAPTER = new LiftRideAdapter();
+
+    private JsonCodec() {
+    }
+
+    /**
+     * Decodes a single LiftRide from a request body, streaming tokens straight from the stream.
+     * Parsing stops at the first bad token, so a bad body is never read to the end.
+     *
+     * @param body the request body stream
+     * @return the decoded LiftRide
+     * @throws JsonSyntaxException if the body is not a valid lift ride
+     * @throws IOException if reading the stream fails
+     */
+    public static LiftRide readLiftRide(InputStream body) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        try {
+            LiftRide ride = LIFT_RIDE_ADAPTER.read(reader);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Unexpected content after lift ride");
+            }
+            return ride;
+        } catch (IllegalStateException | NumberFormatException | MalformedJsonException | EOFException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package codec;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import entity.LiftRide;
+
+import java.io.IOException;
+
+/**
+ * LiftRideAdapter is a hand-written Gson TypeAdapter for LiftRide.
+ * It reads the ride token by token, so no reflective adapter is built and the
+ * request body is never buffered as a whole. Unknown fields are skipped.
+ */
+public class LiftRideAdapter extends TypeAdapter<LiftRide> {
+
+    /**
+     * Writes a LiftRide as a JSON object.
+     *
+     * @param out  the JsonWriter to write to
+     * @param ride the LiftRide to write
+     * @throws IOException if the underlying writer fails
+     */
+    @Override
+    public void write(JsonWriter out, LiftRide ride) throws IOException {
+        if (ride == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("time").value(ride.getTime());
+        out.name("liftID").value(ride.getLiftID());
+        out.name("waitTime").value(ride.getWaitTime());
+        out.endObject();
+    }
+
+    /**
+     * Reads a LiftRide from a JSON object. "time" and "liftID" are required,
+     * "waitTime" defaults to 0.
+     *
+     * @param in the JsonReader to read from
+     * @return the decoded LiftRide
+     * @throws IOException if the JSON is malformed or the stream fails
+     * @throws JsonSyntaxException if a field is missing or out of range
+     */
+    @Override
+    public LiftRide read(JsonReader in) throws IOException {
+        int time = -1;
+        int liftID = -1;
+        int waitTime = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "time":
+                    time = in.nextInt();
+                    break;
+                case "liftID":
+                    liftID = in.nextInt();
+                    break;
+                case "waitTime":
+                    waitTime = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (time < 0 || liftID < 0 || waitTime < 0) {
+            throw new JsonSyntaxException("Invalid lift ride: time and liftID are required and must not be negative");
+        }
+        return new LiftRide(time, liftID, waitTime);
+    }
+}
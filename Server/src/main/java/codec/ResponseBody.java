@@ -0,0 +1,37 @@
+package codec;
+
+import entity.ResponseMsg;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ResponseBody lists the constant ResponseMsg bodies the servlets answer with, each encoded to UTF-8 JSON
+ * once at class load, so writing one costs a single array copy instead of serialization and charset encoding.
+ */
+public enum ResponseBody {
+    CREATED("Successful Created"),
+    FAILED_CREATED("Failed Created"),
+    NOT_FOUND("NOT FOUND"),
+    MISSING_PARAMETER("Missing Parameter"),
+    INVALID_PARAMETER("Invalid Parameter"),
+    DATA_NOT_FOUND("Data Not Found"),
+    CURSOR_EXPIRED("Cursor Expired"),
+    METHOD_NOT_ALLOWED("Method Not Allowed"),
+    REQUEST_IN_PROGRESS("Request In Progress"),
+    TOO_MANY_REQUESTS("Too Many Requests"),
+    SERVER_BUSY("Server Busy"),
+    NODE_UNAVAILABLE("Node Unavailable");
+
+    private final byte[] bytes;
+
+    ResponseBody(String message) {
+        this.bytes = JsonCodec.GSON.toJson(new ResponseMsg(message)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the encoded body; callers must not modify it.
+     */
+    byte[] bytes() {
+        return bytes;
+    }
+}
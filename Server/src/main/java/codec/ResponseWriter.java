@@ -0,0 +1,101 @@
+package codec;
+
+import pool.ThreadCache;
+import trace.RequestTrace;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ResponseWriter writes response bodies as UTF-8 bytes straight to the servlet OutputStream with their
+ * Content-Length, so the container neither encodes characters nor frames the body in chunks.
+ * Constant bodies come pre-encoded from ResponseBody; other objects are serialized by Gson into a buffer
+ * reused by each container thread. Writing a body starts the WRITE stage of the request's trace, which
+ * adds the Server-Timing header while headers can still be set.
+ */
+public final class ResponseWriter {
+
+    // Buffers that grew past this for an unusually large body are not kept for the thread's next request
+    private static final int MAX_RETAINED_BYTES = 1 << 20;
+
+    private static final ThreadCache<BodyBuffer> BUFFER = new ThreadCache<>(BodyBuffer::new, 256);
+
+    private ResponseWriter() {
+    }
+
+    /**
+     * Writes a constant body.
+     *
+     * @param res    The HttpServletResponse object that contains the response.
+     * @param status the HTTP status code
+     * @param body   the pre-encoded body
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    public static void write(HttpServletResponse res, int status, ResponseBody body) throws IOException {
+        write(res, status, body.bytes());
+    }
+
+    /**
+     * Writes an already encoded UTF-8 body.
+     *
+     * @param res    The HttpServletResponse object that contains the response.
+     * @param status the HTTP status code
+     * @param body   the encoded body
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    public static void write(HttpServletResponse res, int status, byte[] body) throws IOException {
+        RequestTrace.beforeBody(res);
+        res.setStatus(status);
+        res.setContentLength(body.length);
+        res.getOutputStream().write(body);
+    }
+
+    /**
+     * Serializes an object to JSON in this thread's buffer and writes it.
+     *
+     * @param res    The HttpServletResponse object that contains the response.
+     * @param status the HTTP status code
+     * @param body   the object to serialize
+     * @throws IOException If an input or output error occurs while writing the response.
+     */
+    public static void writeJson(HttpServletResponse res, int status, Object body) throws IOException {
+        RequestTrace.beforeBody(res);
+        BodyBuffer buffer = BUFFER.acquire();
+        boolean encoded = false;
+        try {
+            JsonCodec.GSON.toJson(body, buffer.writer);
+            buffer.writer.flush();
+            encoded = true;
+            res.setStatus(status);
+            res.setContentLength(buffer.size());
+            res.getOutputStream().write(buffer.array(), 0, buffer.size());
+        } finally {
+            buffer.reset();
+            // A failed serialization may leave characters in the writer, so that buffer is dropped too
+            if (!encoded || buffer.array().length > MAX_RETAINED_BYTES) {
+                BUFFER.discard(buffer);
+            } else {
+                BUFFER.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * A byte buffer exposing its array, with a UTF-8 writer on top.
+     */
+    private static final class BodyBuffer extends ByteArrayOutputStream {
+        final Writer writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+
+        BodyBuffer() {
+            super(4096);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
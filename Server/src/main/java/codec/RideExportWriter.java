@@ -0,0 +1,118 @@
+package codec;
+
+import storage.RideVisitor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RideExportWriter formats rides as NDJSON or CSV lines into a fixed-size buffer and writes the buffer
+ * to the response stream whenever it fills up, so an export of any size streams in chunks of that size.
+ * Numbers are formatted straight into the buffer; no String is created per ride.
+ */
+public class RideExportWriter implements RideVisitor {
+
+    private static final String CSV_HEADER = "skierID,time,liftID,waitTime\n";
+
+    // Longest line: the NDJSON keys plus four ints of at most 11 characters each
+    private static final int MAX_LINE_BYTES = 96;
+
+    private static final byte[] SKIER = ascii("{\"skierID\":");
+    private static final byte[] TIME = ascii(",\"time\":");
+    private static final byte[] LIFT = ascii(",\"liftID\":");
+    private static final byte[] WAIT = ascii(",\"waitTime\":");
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private final boolean csv;
+    private int count;
+
+    /**
+     * Constructs a RideExportWriter; for CSV the header line is written first.
+     *
+     * @param out    the response stream
+     * @param buffer the chunk buffer, at least a few hundred bytes
+     * @param csv    true for CSV, false for NDJSON
+     */
+    public RideExportWriter(OutputStream out, byte[] buffer, boolean csv) {
+        this.out = out;
+        this.buffer = buffer;
+        this.csv = csv;
+        if (csv) {
+            put(ascii(CSV_HEADER));
+        }
+    }
+
+    @Override
+    public void visit(int skierID, int time, int liftID, int waitTime) throws IOException {
+        if (count + MAX_LINE_BYTES > buffer.length) {
+            flushChunk();
+        }
+        if (csv) {
+            putInt(skierID);
+            buffer[count++] = ',';
+            putInt(time);
+            buffer[count++] = ',';
+            putInt(liftID);
+            buffer[count++] = ',';
+            putInt(waitTime);
+        } else {
+            put(SKIER);
+            putInt(skierID);
+            put(TIME);
+            putInt(time);
+            put(LIFT);
+            putInt(liftID);
+            put(WAIT);
+            putInt(waitTime);
+            buffer[count++] = '}';
+        }
+        buffer[count++] = '\n';
+    }
+
+    /**
+     * Writes what is left in the buffer.
+     *
+     * @throws IOException if writing to the response fails
+     */
+    public void finish() throws IOException {
+        flushChunk();
+    }
+
+    private void flushChunk() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void put(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    /**
+     * Formats an int in decimal at the end of the buffer.
+     */
+    private void putInt(int value) {
+        long v = value;
+        if (v < 0) {
+            buffer[count++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long p = 10; p <= v; p *= 10) {
+            digits++;
+        }
+        for (int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        count += digits;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,220 @@
+package codec;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import entity.BatchResult;
+import ingest.RideBatch;
+import ingest.RideSink;
+import storage.RideStore;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RideStreamDecoder decodes a stream of fully addressed lift rides, each carrying its own
+ * resortID, seasonID, dayID and skierID, straight into a RideBatch. Whenever the batch fills up it is
+ * written to the sink and reused, so a request of any size is decoded in constant memory.
+ * Two formats are understood: a JSON array of ride objects, and a binary stream of fixed-width records.
+ */
+public final class RideStreamDecoder {
+
+    /** Size of one binary ride record: seven little-endian ints. */
+    public static final int BINARY_RECORD_BYTES = 28;
+
+    private RideStreamDecoder() {
+    }
+
+    /**
+     * Decodes a JSON array of rides such as
+     * [{"resortID":1,"seasonID":2024,"dayID":1,"skierID":7,"time":120,"liftID":12,"waitTime":3}, ...].
+     * Rides that are incomplete, negative, of a season above RideStore.MAX_SEASON_ID or outside days 1..365
+     * are skipped and reported by index; everything else is written to the sink. Rides decoded before a
+     * syntax error stay written and are counted in the result, so the caller can report them.
+     *
+     * @param body   the request body stream
+     * @param batch  the reusable batch to decode into
+     * @param sink   the sink full batches are written to
+     * @param result receives the accepted and rejected ride counts and the first rejected indexes
+     * @throws JsonSyntaxException if the body is not a JSON array of objects
+     * @throws IOException if reading the stream fails
+     */
+    public static void readJsonArray(InputStream body, RideBatch batch, RideSink sink, BatchResult result)
+            throws IOException {
+        JsonReader in = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        batch.clear();
+        try {
+            in.beginArray();
+            int index = 0;
+            while (in.hasNext()) {
+                if (readRide(in, batch)) {
+                    result.setAccepted(result.getAccepted() + 1);
+                    if (batch.isFull()) {
+                        sink.write(batch);
+                        batch.clear();
+                    }
+                } else {
+                    result.reject(index);
+                }
+                index++;
+            }
+            in.endArray();
+            if (in.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Unexpected content after ride array");
+            }
+        } catch (IllegalStateException | NumberFormatException | MalformedJsonException | EOFException e) {
+            throw new JsonSyntaxException(e);
+        } finally {
+            // Rides decoded before a failure are still written
+            if (batch.size() > 0) {
+                sink.write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Decodes a binary ride stream: consecutive 28-byte records of seven little-endian ints
+     * (resortID, seasonID, dayID, skierID, time, liftID, waitTime). Bytes go straight from the stream
+     * into the batch columns with no intermediate objects. Invalid rides are rejected by index with the
+     * same rules as the JSON format; a trailing partial record is a syntax error.
+     *
+     * @param body   the request body stream
+     * @param buffer a reusable read buffer, at least one record long
+     * @param batch  the reusable batch to decode into
+     * @param sink   the sink full batches are written to
+     * @param result receives the accepted and rejected ride counts and the first rejected indexes
+     * @throws JsonSyntaxException if the stream ends inside a record
+     * @throws IOException if reading the stream fails
+     */
+    public static void readBinary(InputStream body, byte[] buffer, RideBatch batch, RideSink sink,
+                                  BatchResult result) throws IOException {
+        batch.clear();
+        int index = 0;
+        int filled = 0;
+        try {
+            int read;
+            while ((read = body.read(buffer, filled, buffer.length - filled)) >= 0) {
+                filled += read;
+                int pos = 0;
+                for (; filled - pos >= BINARY_RECORD_BYTES; pos += BINARY_RECORD_BYTES, index++) {
+                    if (addRide(batch, intAt(buffer, pos), intAt(buffer, pos + 4), intAt(buffer, pos + 8),
+                            intAt(buffer, pos + 12), intAt(buffer, pos + 16), intAt(buffer, pos + 20),
+                            intAt(buffer, pos + 24))) {
+                        result.setAccepted(result.getAccepted() + 1);
+                        if (batch.isFull()) {
+                            sink.write(batch);
+                            batch.clear();
+                        }
+                    } else {
+                        result.reject(index);
+                    }
+                }
+                // Keep the partial record for the next read
+                System.arraycopy(buffer, pos, buffer, 0, filled - pos);
+                filled -= pos;
+            }
+            if (filled != 0) {
+                throw new JsonSyntaxException("Binary ride stream ends inside a record");
+            }
+        } finally {
+            if (batch.size() > 0) {
+                sink.write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private static int intAt(byte[] buffer, int pos) {
+        return (buffer[pos] & 0xFF) | (buffer[pos + 1] & 0xFF) << 8 | (buffer[pos + 2] & 0xFF) << 16
+                | buffer[pos + 3] << 24;
+    }
+
+    /**
+     * Appends a ride to the batch if it is valid: no negative field, a season the store can key
+     * and a day within 1..365.
+     *
+     * @return true if the ride was appended
+     */
+    private static boolean addRide(RideBatch batch, int resortID, int seasonID, int dayID, int skierID, int time,
+                                   int liftID, int waitTime) {
+        if (resortID < 0 || seasonID < 0 || seasonID > RideStore.MAX_SEASON_ID || dayID < 1 || dayID > 365
+                || skierID < 0 || time < 0 || liftID < 0 || waitTime < 0) {
+            return false;
+        }
+        return batch.add(resortID, seasonID, dayID, skierID, time, liftID, waitTime);
+    }
+
+    /**
+     * Reads one ride object and appends it to the batch if it is valid.
+     *
+     * @param in    the reader positioned at the ride object
+     * @param batch the batch to append to; it has room for one more ride
+     * @return true if the ride was valid and appended
+     * @throws IOException if the JSON is malformed
+     */
+    private static boolean readRide(JsonReader in, RideBatch batch) throws IOException {
+        int resortID = -1;
+        int seasonID = -1;
+        int dayID = -1;
+        int skierID = -1;
+        int time = -1;
+        int liftID = -1;
+        int waitTime = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "resortID":
+                    resortID = readInt(in);
+                    break;
+                case "seasonID":
+                    seasonID = readInt(in);
+                    break;
+                case "dayID":
+                    dayID = readInt(in);
+                    break;
+                case "skierID":
+                    skierID = readInt(in);
+                    break;
+                case "time":
+                    time = readInt(in);
+                    break;
+                case "liftID":
+                    liftID = readInt(in);
+                    break;
+                case "waitTime":
+                    waitTime = readInt(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return addRide(batch, resortID, seasonID, dayID, skierID, time, liftID, waitTime);
+    }
+
+    /**
+     * Reads an int field value, skipping values that are not numbers.
+     *
+     * @param in the reader positioned at the value
+     * @return the value, or Integer.MIN_VALUE if it is not an int
+     * @throws IOException if the JSON is malformed
+     */
+    private static int readInt(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.NUMBER && in.peek() != JsonToken.STRING) {
+            in.skipValue();
+            return Integer.MIN_VALUE;
+        }
+        try {
+            return in.nextInt();
+        } catch (NumberFormatException e) {
+            in.skipValue();
+            return Integer.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package dedup;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * BlockedBloomFilter is a Bloom filter whose probe bits for one key all fall in a single 512-bit block,
+ * so a lookup or insert touches one cache line however many bits it checks. Bits are set with CAS
+ * and read without locking; a filter only forgets keys when it is cleared as a whole.
+ */
+public class BlockedBloomFilter {
+
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * 64;
+    // 16 bits in a 512-bit block at 24 bits per key keep false positives near 1 in 30000
+    private static final int PROBES = 16;
+    private static final int BITS_PER_KEY = 24;
+
+    private final AtomicLongArray bits;
+    private final int blockMask;
+
+    /**
+     * Constructs an empty filter.
+     *
+     * @param expectedKeys the number of keys the filter is sized for
+     */
+    public BlockedBloomFilter(int expectedKeys) {
+        long wanted = Math.max(1, (long) expectedKeys * BITS_PER_KEY / BLOCK_BITS);
+        int blocks = Integer.highestOneBit((int) Math.min(1 << 24, wanted * 2 - 1));
+        this.bits = new AtomicLongArray(blocks * BLOCK_LONGS);
+        this.blockMask = blocks - 1;
+    }
+
+    /**
+     * Returns whether the key may have been added. False positives are possible, false negatives are not.
+     *
+     * @param hash the key's 64-bit hash
+     * @return false if the key was definitely never added
+     */
+    public boolean mightContain(long hash) {
+        int base = blockOf(hash);
+        int a = (int) hash;
+        int b = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (a + i * b) & (BLOCK_BITS - 1);
+            if ((bits.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param hash the key's 64-bit hash
+     */
+    public void add(long hash) {
+        int base = blockOf(hash);
+        int a = (int) hash;
+        int b = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (a + i * b) & (BLOCK_BITS - 1);
+            int index = base + (bit >>> 6);
+            long mask = 1L << bit;
+            long word = bits.get(index);
+            while ((word & mask) == 0 && !bits.compareAndSet(index, word, word | mask)) {
+                word = bits.get(index);
+            }
+        }
+    }
+
+    /**
+     * Removes every key.
+     */
+    public void clear() {
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, 0);
+        }
+    }
+
+    /**
+     * Picks the block from hash bits the probes do not use.
+     */
+    private int blockOf(long hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return ((int) (h >>> 40) & blockMask) * BLOCK_LONGS;
+    }
+}
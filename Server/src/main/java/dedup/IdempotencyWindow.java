@@ -0,0 +1,131 @@
+package dedup;
+
+/**
+ * IdempotencyWindow recognizes client retries by their Idempotency-Key within a sliding time window,
+ * in bounded memory. Recent keys are kept exactly in a RecentKeySet, which also tells a retry racing its
+ * original (still pending) from one whose original was applied. Keys of applied requests are also added to
+ * two rotating Bloom filters: the current one and the one covering the previous window. Filters rotate
+ * every window, so a key is remembered for between one and two windows after it is applied, even once it
+ * has been evicted from the exact set.
+ *
+ * A Bloom false positive makes a fresh request look like a retry; the filters are sized so this happens
+ * about once in 30000 keys while they hold no more than the expected number of keys per window.
+ *
+ * Usage: begin() a key; if it is NEW, apply the request and then commit() or, if the request fails, abort().
+ */
+public class IdempotencyWindow {
+
+    /**
+     * The outcome of begin().
+     */
+    public enum Status {
+        /** The key was not seen; the caller owns it until commit() or abort(). */
+        NEW,
+        /** A request with this key is still in flight. */
+        IN_FLIGHT,
+        /** A request with this key was already applied. */
+        DUPLICATE
+    }
+
+    private final long windowMillis;
+    private final RecentKeySet recent;
+    private volatile BlockedBloomFilter current;
+    private volatile BlockedBloomFilter previous;
+    private volatile long rotateAtMillis;
+
+    /**
+     * Constructs an empty window.
+     *
+     * @param windowMillis how long applied keys are remembered at least
+     * @param expectedKeys the number of keys expected per window, which sizes each Bloom filter
+     * @param recentKeys   the number of most recent keys remembered exactly
+     */
+    public IdempotencyWindow(long windowMillis, int expectedKeys, int recentKeys) {
+        this.windowMillis = windowMillis;
+        this.recent = new RecentKeySet(recentKeys);
+        this.current = new BlockedBloomFilter(expectedKeys);
+        this.previous = new BlockedBloomFilter(expectedKeys);
+        this.rotateAtMillis = System.currentTimeMillis() + windowMillis;
+    }
+
+    /**
+     * Checks a key and, if it is new, reserves it.
+     *
+     * @param key the Idempotency-Key header value
+     * @return NEW if the request should be applied, IN_FLIGHT or DUPLICATE if it is a retry
+     */
+    public Status begin(String key) {
+        long hash = hash(key);
+        int state = recent.reserve(hash);
+        if (state == RecentKeySet.COMMITTED) {
+            return Status.DUPLICATE;
+        }
+        if (state == RecentKeySet.PENDING) {
+            return Status.IN_FLIGHT;
+        }
+        rotateIfDue();
+        if (current.mightContain(hash) || previous.mightContain(hash)) {
+            // Applied earlier but already evicted from the exact set
+            recent.commit(hash);
+            return Status.DUPLICATE;
+        }
+        return Status.NEW;
+    }
+
+    /**
+     * Records that the request holding the key was applied.
+     *
+     * @param key the key passed to begin()
+     */
+    public void commit(String key) {
+        long hash = hash(key);
+        current.add(hash);
+        recent.commit(hash);
+    }
+
+    /**
+     * Forgets a key whose request was not applied, so the client's retry is applied.
+     *
+     * @param key the key passed to begin()
+     */
+    public void abort(String key) {
+        recent.release(hash(key));
+    }
+
+    /**
+     * Starts a new window once the current one has ended: the previous filter is cleared and becomes current.
+     */
+    private void rotateIfDue() {
+        long now = System.currentTimeMillis();
+        if (now < rotateAtMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (now < rotateAtMillis) {
+                return;
+            }
+            BlockedBloomFilter expired = previous;
+            previous = current;
+            expired.clear();
+            current = expired;
+            // After a long idle period both filters are older than the window
+            if (now >= rotateAtMillis + windowMillis) {
+                previous.clear();
+            }
+            rotateAtMillis = now + windowMillis;
+        }
+    }
+
+    /**
+     * Hashes a key to 64 bits: FNV-1a over its characters followed by the SplitMix64 finalizer.
+     */
+    static long hash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,169 @@
+package dedup;
+
+/**
+ * RecentKeySet remembers the most recent key hashes exactly, each either pending or committed.
+ * It is striped by hash; each stripe is a linear-probing table plus a ring of its keys in insertion
+ * order, and inserting into a full stripe evicts its oldest key. A released key keeps its ring slot until the
+ * ring wraps around to it; each table slot records the ring position of its entry, so that stale slot never
+ * evicts the same key if it was reserved again meanwhile. Memory is fixed at construction.
+ */
+public class RecentKeySet {
+
+    /** The key is new and now reserved as pending. */
+    public static final int ADDED = 0;
+    /** The key is reserved by a request still in flight. */
+    public static final int PENDING = 1;
+    /** The key belongs to a request that was applied. */
+    public static final int COMMITTED = 2;
+
+    private static final int STRIPES = 16;
+    private static final long EMPTY = 0;
+    private static final long COMMITTED_BIT = 1;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * Constructs an empty RecentKeySet.
+     *
+     * @param capacity the number of keys remembered over all stripes
+     */
+    public RecentKeySet(int capacity) {
+        int perStripe = Math.max(16, capacity / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Reserves the key as pending unless it is already known.
+     *
+     * @param hash the key's 64-bit hash
+     * @return ADDED if the key was new, otherwise PENDING or COMMITTED
+     */
+    public int reserve(long hash) {
+        Stripe stripe = stripeOf(hash);
+        synchronized (stripe) {
+            return stripe.reserve(entryOf(hash));
+        }
+    }
+
+    /**
+     * Marks a reserved key as committed.
+     *
+     * @param hash the key's 64-bit hash
+     */
+    public void commit(long hash) {
+        Stripe stripe = stripeOf(hash);
+        synchronized (stripe) {
+            stripe.commit(entryOf(hash));
+        }
+    }
+
+    /**
+     * Forgets a reserved key, so a later request with the same key is treated as new.
+     *
+     * @param hash the key's 64-bit hash
+     */
+    public void release(long hash) {
+        Stripe stripe = stripeOf(hash);
+        synchronized (stripe) {
+            stripe.remove(entryOf(hash));
+        }
+    }
+
+    private Stripe stripeOf(long hash) {
+        return stripes[(int) (hash >>> 60) & (STRIPES - 1)];
+    }
+
+    /**
+     * Turns a hash into a table entry: bit 0 holds the committed flag and bit 1 is always set, so no entry is EMPTY.
+     */
+    private static long entryOf(long hash) {
+        return (hash & ~COMMITTED_BIT) | 2;
+    }
+
+    /**
+     * One stripe. Not thread-safe; RecentKeySet locks it.
+     */
+    private static final class Stripe {
+        private final long[] table;
+        // The ring position of each table slot's entry
+        private final int[] positions;
+        private final int mask;
+        private final long[] ring;
+        private int ringHead;
+        private int size;
+
+        Stripe(int capacity) {
+            ring = new long[capacity];
+            int length = Integer.highestOneBit(capacity * 2 - 1) << 1;
+            table = new long[length];
+            positions = new int[length];
+            mask = length - 1;
+        }
+
+        int reserve(long entry) {
+            int slot = slotOf(entry);
+            if (table[slot] != EMPTY) {
+                return (table[slot] & COMMITTED_BIT) != 0 ? COMMITTED : PENDING;
+            }
+            if (size == ring.length) {
+                // Evict the oldest key, unless it was released and its table slot is gone or reserved again later
+                int oldest = slotOf(ring[ringHead]);
+                if (table[oldest] != EMPTY && positions[oldest] == ringHead) {
+                    removeAt(oldest);
+                    slot = slotOf(entry);
+                }
+            } else {
+                size++;
+            }
+            ring[ringHead] = entry;
+            table[slot] = entry;
+            positions[slot] = ringHead;
+            ringHead = (ringHead + 1) % ring.length;
+            return ADDED;
+        }
+
+        void commit(long entry) {
+            int slot = slotOf(entry);
+            if (table[slot] != EMPTY) {
+                table[slot] |= COMMITTED_BIT;
+            }
+        }
+
+        /**
+         * Removes an entry and shifts later entries of its probe run back, so lookups never hit a hole.
+         */
+        void remove(long entry) {
+            int slot = slotOf(entry);
+            if (table[slot] != EMPTY) {
+                removeAt(slot);
+            }
+        }
+
+        private void removeAt(int slot) {
+            table[slot] = EMPTY;
+            int next = (slot + 1) & mask;
+            while (table[next] != EMPTY) {
+                long moved = table[next];
+                table[next] = EMPTY;
+                int target = slotOf(moved);
+                table[target] = moved;
+                positions[target] = positions[next];
+                next = (next + 1) & mask;
+            }
+        }
+
+        /**
+         * Finds the slot holding the entry, ignoring the committed flag, or the empty slot where it would go.
+         */
+        private int slotOf(long entry) {
+            long key = entry & ~COMMITTED_BIT;
+            int slot = (int) (key ^ (key >>> 29)) & mask;
+            while (table[slot] != EMPTY && (table[slot] & ~COMMITTED_BIT) != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package entity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchResult {
+    /** The number of rejected ride indexes listed; rejectedCount counts all of them. */
+    public static final int MAX_REPORTED_REJECTED = 1000;
+
+    private int accepted;
+    private int rejectedCount;
+    private List<Integer> rejected = new ArrayList<>();
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(int accepted) {
+        this.accepted = accepted;
+    }
+
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public List<Integer> getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(List<Integer> rejected) {
+        this.rejected = rejected;
+    }
+
+    /**
+     * Counts a rejected ride and lists its index if fewer than MAX_REPORTED_REJECTED are listed.
+     *
+     * @param index the ride's index in the request
+     */
+    public void reject(int index) {
+        rejectedCount++;
+        if (rejected.size() < MAX_REPORTED_REJECTED) {
+            rejected.add(index);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package entity;
+
+import java.util.List;
+
+public class Leaderboard {
+
+    private List<TopSkier> topSkiers;
+    public Leaderboard(List<TopSkier> topSkiers) {
+        this.topSkiers = topSkiers;
+    }
+
+    public List<TopSkier> getTopSkiers() {
+        return topSkiers;
+    }
+}
@@ -0,0 +1,26 @@
+package entity;
+
+public class LiftUtilization {
+    private Integer resortID;
+    private Integer seasonID;
+    private Integer dayID;
+    private Integer bucketMinutes;
+    // rides[liftID][bucket]: rides on the lift with a time in [bucket * bucketMinutes, (bucket + 1) * bucketMinutes)
+    private long[][] rides;
+
+    public LiftUtilization(Integer resortID, Integer seasonID, Integer dayID, Integer bucketMinutes, long[][] rides) {
+        this.resortID = resortID;
+        this.seasonID = seasonID;
+        this.dayID = dayID;
+        this.bucketMinutes = bucketMinutes;
+        this.rides = rides;
+    }
+
+    public Integer getBucketMinutes() {
+        return bucketMinutes;
+    }
+
+    public long[][] getRides() {
+        return rides;
+    }
+}
@@ -0,0 +1,19 @@
+package entity;
+
+public class TopSkier {
+    private Integer skierID;
+    private Long totalVert;
+
+    public TopSkier(Integer skierID, Long totalVert) {
+        this.skierID = skierID;
+        this.totalVert = totalVert;
+    }
+
+    public Integer getSkierID() {
+        return skierID;
+    }
+
+    public Long getTotalVert() {
+        return totalVert;
+    }
+}
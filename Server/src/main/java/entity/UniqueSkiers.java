@@ -0,0 +1,31 @@
+package entity;
+
+public class UniqueSkiers {
+    private Integer resortID;
+    private Integer seasonID;
+    private Integer dayID;
+    private Long numSkiers;
+
+    public UniqueSkiers(Integer resortID, Integer seasonID, Integer dayID, Long numSkiers) {
+        this.resortID = resortID;
+        this.seasonID = seasonID;
+        this.dayID = dayID;
+        this.numSkiers = numSkiers;
+    }
+
+    public Integer getResortID() {
+        return resortID;
+    }
+
+    public Integer getSeasonID() {
+        return seasonID;
+    }
+
+    public Integer getDayID() {
+        return dayID;
+    }
+
+    public Long getNumSkiers() {
+        return numSkiers;
+    }
+}
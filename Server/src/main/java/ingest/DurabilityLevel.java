@@ -0,0 +1,26 @@
+package ingest;
+
+import java.util.Locale;
+
+/**
+ * DurabilityLevel decides when an asynchronously ingested ride is acknowledged to the client.
+ */
+public enum DurabilityLevel {
+
+    /** Acknowledge as soon as the ride is on the ingest queue. */
+    ACCEPTED,
+
+    /** Acknowledge once the batch holding the ride has been written to the sink. */
+    COMMITTED;
+
+    /**
+     * Parses a durability level name, ignoring case.
+     *
+     * @param name the level name, or null for the default
+     * @return the matching level, COMMITTED if name is null
+     * @throws IllegalArgumentException if the name is not a level
+     */
+    public static DurabilityLevel parse(String name) {
+        return name == null ? COMMITTED : valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
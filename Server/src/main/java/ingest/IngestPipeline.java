@@ -0,0 +1,146 @@
+package ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * IngestPipeline decouples request threads from storage writes.
+ * Request threads put rides on a bounded queue; a small pool of writer threads drains the queue
+ * in batches and commits each batch to the sink in one call, so per-write costs such as locking
+ * and syncing are paid once per batch instead of once per ride. Submissions hold a shared lock that shutdown
+ * takes exclusively, so a ride accepted by submit() is always on the queue before the writers drain it for good.
+ */
+public class IngestPipeline {
+
+    private final BlockingQueue<PendingRide> queue;
+    private final RideSink sink;
+    private final int batchSize;
+    private final Thread[] writers;
+    private final BiConsumer<String, Throwable> errorLog;
+    private final ReentrantReadWriteLock intake = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+
+    /**
+     * Constructs and starts an IngestPipeline.
+     *
+     * @param sink          the sink committed batches are written to
+     * @param queueCapacity the maximum number of rides waiting to be written
+     * @param writerCount   the number of writer threads
+     * @param batchSize     the maximum number of rides committed in one batch
+     * @param errorLog      receives failed writes and failed acknowledgements, with a message
+     */
+    public IngestPipeline(RideSink sink, int queueCapacity, int writerCount, int batchSize,
+                          BiConsumer<String, Throwable> errorLog) {
+        this.sink = sink;
+        this.errorLog = errorLog;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.writers = new Thread[writerCount];
+        for (int i = 0; i < writerCount; i++) {
+            writers[i] = new Thread(this::drainLoop, "ingest-writer-" + i);
+            writers[i].setDaemon(true);
+            writers[i].start();
+        }
+    }
+
+    /**
+     * Puts a ride on the ingest queue without blocking.
+     *
+     * @param ride the ride to ingest
+     * @return true if the ride was queued, false if the queue is full or the pipeline is stopped
+     */
+    public boolean submit(PendingRide ride) {
+        intake.readLock().lock();
+        try {
+            return running && queue.offer(ride);
+        } finally {
+            intake.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of rides waiting to be written.
+     *
+     * @return the queue length
+     */
+    public int backlog() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting rides, writes everything still queued and waits for the writers to exit.
+     *
+     * @throws InterruptedException if interrupted while waiting for the writers
+     */
+    public void shutdown() throws InterruptedException {
+        // Waits for submissions in progress, so none can queue a ride after the writers have exited
+        intake.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            intake.writeLock().unlock();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+    }
+
+    /**
+     * Writer thread loop: waits for the first ride, drains up to a full batch and commits it.
+     * After shutdown the loop keeps going until the queue is empty.
+     */
+    private void drainLoop() {
+        RideBatch batch = new RideBatch(batchSize);
+        List<PendingRide> drained = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRide first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                drained.add(first);
+                queue.drainTo(drained, batchSize - 1);
+                commit(batch, drained);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                drained.clear();
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the drained rides as one batch and acknowledges them.
+     *
+     * @param batch   the reusable batch to fill
+     * @param drained the rides taken from the queue
+     */
+    private void commit(RideBatch batch, List<PendingRide> drained) {
+        for (PendingRide ride : drained) {
+            batch.add(ride.resortID, ride.seasonID, ride.dayID, ride.skierID, ride.time, ride.liftID, ride.waitTime);
+        }
+        boolean committed = false;
+        try {
+            sink.write(batch);
+            committed = true;
+        } catch (RuntimeException e) {
+            errorLog.accept("Failed to write a batch of " + batch.size() + " rides", e);
+        }
+        for (PendingRide ride : drained) {
+            if (ride.completion != null) {
+                try {
+                    ride.completion.onComplete(committed);
+                } catch (RuntimeException e) {
+                    errorLog.accept("Failed to acknowledge a ride of skier " + ride.skierID, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ingest;
+
+/**
+ * PendingRide is one lift ride waiting on the ingest queue, together with the callback
+ * that acknowledges it once its batch is committed.
+ */
+public class PendingRide {
+
+    /**
+     * Callback invoked by the writer thread after the ride's batch is written.
+     */
+    public interface Completion {
+
+        /**
+         * @param committed true if the batch was written, false if the sink failed
+         */
+        void onComplete(boolean committed);
+    }
+
+    final int resortID;
+    final int seasonID;
+    final int dayID;
+    final int skierID;
+    final int time;
+    final int liftID;
+    final int waitTime;
+    final Completion completion;
+
+    /**
+     * Constructs a PendingRide.
+     *
+     * @param completion the callback to run after commit, or null if nobody waits for it
+     */
+    public PendingRide(int resortID, int seasonID, int dayID, int skierID, int time, int liftID, int waitTime,
+                       Completion completion) {
+        this.resortID = resortID;
+        this.seasonID = seasonID;
+        this.dayID = dayID;
+        this.skierID = skierID;
+        this.time = time;
+        this.liftID = liftID;
+        this.waitTime = waitTime;
+        this.completion = completion;
+    }
+}
@@ -0,0 +1,97 @@
+package ingest;
+
+/**
+ * RideBatch is a reusable, fixed-capacity batch of lift rides kept in primitive columns.
+ * Writers fill a batch, hand it to a RideSink in one call and clear it for the next round,
+ * so batching costs no allocation per ride.
+ */
+public class RideBatch {
+
+    private final int[] resortIDs;
+    private final int[] seasonIDs;
+    private final int[] dayIDs;
+    private final int[] skierIDs;
+    private final int[] times;
+    private final int[] liftIDs;
+    private final int[] waitTimes;
+    private int size;
+
+    /**
+     * Constructs an empty RideBatch.
+     *
+     * @param capacity the maximum number of rides in the batch
+     */
+    public RideBatch(int capacity) {
+        resortIDs = new int[capacity];
+        seasonIDs = new int[capacity];
+        dayIDs = new int[capacity];
+        skierIDs = new int[capacity];
+        times = new int[capacity];
+        liftIDs = new int[capacity];
+        waitTimes = new int[capacity];
+    }
+
+    /**
+     * Adds a ride to the end of the batch.
+     *
+     * @return true if the ride was added, false if the batch is full
+     */
+    public boolean add(int resortID, int seasonID, int dayID, int skierID, int time, int liftID, int waitTime) {
+        if (size == resortIDs.length) {
+            return false;
+        }
+        resortIDs[size] = resortID;
+        seasonIDs[size] = seasonID;
+        dayIDs[size] = dayID;
+        skierIDs[size] = skierID;
+        times[size] = time;
+        liftIDs[size] = liftID;
+        waitTimes[size] = waitTime;
+        size++;
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return resortIDs.length;
+    }
+
+    public boolean isFull() {
+        return size == resortIDs.length;
+    }
+
+    public int resortID(int i) {
+        return resortIDs[i];
+    }
+
+    public int seasonID(int i) {
+        return seasonIDs[i];
+    }
+
+    public int dayID(int i) {
+        return dayIDs[i];
+    }
+
+    public int skierID(int i) {
+        return skierIDs[i];
+    }
+
+    public int time(int i) {
+        return times[i];
+    }
+
+    public int liftID(int i) {
+        return liftIDs[i];
+    }
+
+    public int waitTime(int i) {
+        return waitTimes[i];
+    }
+}
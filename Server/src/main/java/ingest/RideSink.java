@@ -0,0 +1,15 @@
+package ingest;
+
+/**
+ * RideSink is the commit step of the ingest path.
+ * Once write returns, every ride of the batch is applied and visible to readers.
+ */
+public interface RideSink {
+
+    /**
+     * Applies every ride of the batch.
+     *
+     * @param batch the rides to apply; the sink must not keep a reference to it
+     */
+    void write(RideBatch batch);
+}
@@ -0,0 +1,26 @@
+package ingest;
+
+/**
+ * SinkChain writes each batch to several sinks in order, for example the write-ahead log
+ * first and the in-memory store second.
+ */
+public class SinkChain implements RideSink {
+
+    private final RideSink[] sinks;
+
+    /**
+     * Constructs a SinkChain.
+     *
+     * @param sinks the sinks, in the order batches are written to them
+     */
+    public SinkChain(RideSink... sinks) {
+        this.sinks = sinks.clone();
+    }
+
+    @Override
+    public void write(RideBatch batch) {
+        for (RideSink sink : sinks) {
+            sink.write(batch);
+        }
+    }
+}
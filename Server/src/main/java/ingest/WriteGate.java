@@ -0,0 +1,49 @@
+package ingest;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * WriteGate lets maintenance work run while no batch is half-way through the sink.
+ * Batches pass through under a shared lock, so writers never block each other; an exclusive
+ * action waits for the batches in flight and holds off new ones until it returns. The DayFreezer
+ * uses it to seal a day at a write-ahead log position that every logged ride is either before
+ * and applied, or after and not yet applied.
+ */
+public class WriteGate implements RideSink {
+
+    private final RideSink sink;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructs a WriteGate.
+     *
+     * @param sink the sink batches are written to
+     */
+    public WriteGate(RideSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void write(RideBatch batch) {
+        lock.readLock().lock();
+        try {
+            sink.write(batch);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs an action while no batch is being written.
+     *
+     * @param action the action to run
+     */
+    public void exclusive(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package metrics;
+
+/**
+ * Endpoint names the request routes that are measured separately.
+ */
+public enum Endpoint {
+
+    POST_RIDE("post_ride"),
+    POST_BATCH("post_batch"),
+    GET_VERTICAL("get_vertical"),
+    GET_DAY_VERTICAL("get_day_vertical"),
+    GET_LEADERBOARD("get_leaderboard"),
+    GET_UNIQUE_SKIERS("get_unique_skiers"),
+    GET_LIFT_UTILIZATION("get_lift_utilization"),
+    GET_DAY_RIDES("get_day_rides"),
+    OTHER("other");
+
+    private final String label;
+
+    Endpoint(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
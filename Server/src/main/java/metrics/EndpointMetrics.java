@@ -0,0 +1,69 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * EndpointMetrics holds the latency histogram and the per-status request counters of one endpoint.
+ * Counters are striped LongAdders allocated up front for every status code, so recording a request
+ * never allocates and never contends on a single memory location.
+ */
+public class EndpointMetrics {
+
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+
+    private final Endpoint endpoint;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder[] statusCounts = new LongAdder[MAX_STATUS - MIN_STATUS + 1];
+
+    /**
+     * Constructs the metrics of one endpoint.
+     *
+     * @param endpoint the endpoint measured
+     */
+    public EndpointMetrics(Endpoint endpoint) {
+        this.endpoint = endpoint;
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one finished request.
+     *
+     * @param status the HTTP status code sent
+     * @param nanos  the time spent handling the request
+     */
+    public void record(int status, long nanos) {
+        latency.recordNanos(nanos);
+        if (status >= MIN_STATUS && status <= MAX_STATUS) {
+            statusCounts[status - MIN_STATUS].increment();
+        }
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the number of requests answered with the given status.
+     *
+     * @param status the HTTP status code
+     * @return the count
+     */
+    public long statusCount(int status) {
+        return status < MIN_STATUS || status > MAX_STATUS ? 0 : statusCounts[status - MIN_STATUS].sum();
+    }
+
+    public static int minStatus() {
+        return MIN_STATUS;
+    }
+
+    public static int maxStatus() {
+        return MAX_STATUS;
+    }
+}
@@ -0,0 +1,76 @@
+package metrics;
+
+import java.io.PrintWriter;
+
+/**
+ * ServerMetrics is the process-wide registry of per-endpoint request metrics.
+ * Servlets record into it on every request and MetricsServlet renders it in the
+ * Prometheus text exposition format.
+ */
+public final class ServerMetrics {
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99, 0.999};
+    private static final EndpointMetrics[] ENDPOINTS = new EndpointMetrics[Endpoint.values().length];
+
+    static {
+        for (Endpoint endpoint : Endpoint.values()) {
+            ENDPOINTS[endpoint.ordinal()] = new EndpointMetrics(endpoint);
+        }
+    }
+
+    private ServerMetrics() {
+    }
+
+    /**
+     * Records one finished request.
+     *
+     * @param endpoint  the endpoint that handled the request
+     * @param status    the HTTP status code sent
+     * @param startNanos the System.nanoTime() taken when the request arrived
+     */
+    public static void record(Endpoint endpoint, int status, long startNanos) {
+        ENDPOINTS[endpoint.ordinal()].record(status, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the metrics of one endpoint.
+     *
+     * @param endpoint the endpoint
+     * @return its metrics
+     */
+    public static EndpointMetrics of(Endpoint endpoint) {
+        return ENDPOINTS[endpoint.ordinal()];
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format.
+     *
+     * @param out the writer to write to
+     */
+    public static void writePrometheus(PrintWriter out) {
+        out.println("# HELP skier_request_latency_seconds Server-side request processing time.");
+        out.println("# TYPE skier_request_latency_seconds summary");
+        for (EndpointMetrics metrics : ENDPOINTS) {
+            String route = metrics.getEndpoint().getLabel();
+            LatencyHistogram latency = metrics.getLatency();
+            for (double quantile : QUANTILES) {
+                out.println("skier_request_latency_seconds{route=\"" + route + "\",quantile=\"" + quantile + "\"} "
+                        + latency.quantileMicros(quantile) / 1e6);
+            }
+            out.println("skier_request_latency_seconds_sum{route=\"" + route + "\"} " + latency.sumMicros() / 1e6);
+            out.println("skier_request_latency_seconds_count{route=\"" + route + "\"} " + latency.count());
+        }
+
+        out.println("# HELP skier_requests_total Requests answered, by route and status code.");
+        out.println("# TYPE skier_requests_total counter");
+        for (EndpointMetrics metrics : ENDPOINTS) {
+            for (int status = EndpointMetrics.minStatus(); status <= EndpointMetrics.maxStatus(); status++) {
+                long count = metrics.statusCount(status);
+                if (count > 0) {
+                    out.println("skier_requests_total{route=\"" + metrics.getEndpoint().getLabel()
+                            + "\",status=\"" + status + "\"} " + count);
+                }
+            }
+        }
+    }
+}
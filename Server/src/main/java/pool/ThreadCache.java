@@ -0,0 +1,98 @@
+package pool;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * ThreadCache hands out reusable per-request objects such as buffers and batches. On a platform thread, which the
+ * container keeps in a pool, the object lives in a ThreadLocal and is reused by every request the thread serves.
+ * A virtual thread serves one request and is gone, so a ThreadLocal would allocate the object again for each
+ * request; there the object is taken from a shared pool instead and handed back with release().
+ *
+ * Every acquire() must be paired with release() or discard() once the request no longer uses the object.
+ */
+public final class ThreadCache<T> {
+
+    // The class of virtual threads, or null on runtimes before Java 21
+    private static final Class<?> VIRTUAL_THREAD = virtualThreadClass();
+
+    private final Supplier<T> factory;
+    private final ThreadLocal<T> local;
+    private final ConcurrentLinkedQueue<T> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int maxPooled;
+
+    /**
+     * Constructs a ThreadCache.
+     *
+     * @param factory   creates a new object
+     * @param maxPooled the number of idle objects kept for virtual threads
+     */
+    public ThreadCache(Supplier<T> factory, int maxPooled) {
+        this.factory = factory;
+        this.local = ThreadLocal.withInitial(factory);
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Returns an object for the current request: the thread's own on a platform thread, otherwise a pooled or new one.
+     *
+     * @return the object
+     */
+    public T acquire() {
+        if (!isVirtual()) {
+            return local.get();
+        }
+        T value = pool.poll();
+        if (value == null) {
+            return factory.get();
+        }
+        pooled.decrementAndGet();
+        return value;
+    }
+
+    /**
+     * Hands an object back once the request is done with it; on a platform thread the thread keeps it.
+     *
+     * @param value the object from acquire(), or null
+     */
+    public void release(T value) {
+        if (value == null || !isVirtual()) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            pool.offer(value);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Drops an object that must not be reused, for instance a buffer that grew too large.
+     *
+     * @param value the object from acquire()
+     */
+    public void discard(T value) {
+        if (!isVirtual()) {
+            local.remove();
+        }
+    }
+
+    /**
+     * Returns whether the current thread is a virtual thread.
+     *
+     * @return true on a virtual thread
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL_THREAD != null && Thread.currentThread().getClass() == VIRTUAL_THREAD;
+    }
+
+    private static Class<?> virtualThreadClass() {
+        try {
+            return Class.forName("java.lang.VirtualThread");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+}
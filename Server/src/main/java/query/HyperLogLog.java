@@ -0,0 +1,95 @@
+package query;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog is an approximate distinct counter over int IDs with a fixed memory footprint.
+ * Each ID is hashed to 64 bits; the top PRECISION bits pick one of 2^PRECISION byte registers, which
+ * keeps the longest run of leading zeros seen in the remaining bits. With 4096 registers a sketch takes
+ * 4 KB and estimates within about 1.6% standard error. Sketches merge by register-wise maximum, so the
+ * sketches of several days add up to the sketch of their union.
+ *
+ * Registers only grow and most adds leave them unchanged, so an add reads its register without locking
+ * and only locks to raise it.
+ */
+public class HyperLogLog {
+
+    public static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    /**
+     * Adds an ID to the sketch.
+     *
+     * @param id the ID, for example a skierID
+     */
+    public void add(int id) {
+        long hash = mix(id);
+        int index = (int) (hash >>> (64 - PRECISION));
+        // Leading zeros of the remaining bits plus one; the sentinel bit caps the rank when they are all zero
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (registers[index] < rank) {
+            synchronized (this) {
+                if (registers[index] < rank) {
+                    registers[index] = rank;
+                }
+            }
+        }
+    }
+
+    /**
+     * Raises every register of this sketch to at least the other sketch's value.
+     *
+     * @param other the sketch to merge in
+     */
+    public synchronized void merge(HyperLogLog other) {
+        byte[] source = other.snapshot();
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] < source[i]) {
+                registers[i] = source[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct IDs added.
+     *
+     * @return the estimate
+     */
+    public long estimate() {
+        byte[] current = snapshot();
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : current) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        // Small cardinalities: linear counting over the empty registers is more accurate
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Returns a consistent copy of the registers.
+     */
+    private synchronized byte[] snapshot() {
+        return Arrays.copyOf(registers, REGISTERS);
+    }
+
+    /**
+     * Spreads an int ID over 64 bits (the SplitMix64 finalizer), so sequential IDs land in unrelated registers.
+     */
+    private static long mix(int id) {
+        long z = id * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,70 @@
+package query;
+
+import ingest.RideBatch;
+import ingest.RideSink;
+import storage.RideStore;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LeaderboardView keeps the top skiers by vertical of every (resortID, seasonID, dayID).
+ * It is updated on every ingested batch, so a leaderboard query copies at most N entries
+ * instead of aggregating the day's rides.
+ */
+public class LeaderboardView implements RideSink {
+
+    public static final String ATTRIBUTE = LeaderboardView.class.getName();
+
+    private final ConcurrentHashMap<Long, TopSkiers> days = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    /**
+     * Constructs an empty LeaderboardView.
+     *
+     * @param capacity the largest N a leaderboard query may ask for
+     */
+    public LeaderboardView(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds the vertical of every ride of the batch to its day's leaderboard.
+     * Consecutive rides of the same day reuse the lookup.
+     *
+     * @param batch the ingested rides
+     */
+    @Override
+    public void write(RideBatch batch) {
+        TopSkiers day = null;
+        long dayKey = -1;
+        for (int i = 0; i < batch.size(); i++) {
+            long key = RideStore.partitionKey(batch.resortID(i), batch.seasonID(i), batch.dayID(i));
+            if (day == null || key != dayKey) {
+                day = days.computeIfAbsent(key, k -> new TopSkiers(capacity));
+                dayKey = key;
+            }
+            day.add(batch.skierID(i), RideStore.verticalOf(batch.liftID(i)));
+        }
+    }
+
+    /**
+     * Returns the leaderboard of one day.
+     *
+     * @param resortID the resort ID
+     * @param seasonID the season ID
+     * @param dayID    the day ID
+     * @return the day's leaderboard, or null if the day has no rides
+     */
+    public TopSkiers day(int resortID, int seasonID, int dayID) {
+        return days.get(RideStore.partitionKey(resortID, seasonID, dayID));
+    }
+
+    /**
+     * Returns the largest N a leaderboard query may ask for.
+     *
+     * @return the capacity of each day's leaderboard
+     */
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,79 @@
+package query;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LiftGrid counts the rides of one day per (liftID, time bucket).
+ * Counters are striped: each writer thread increments its own copy of the grid, chosen by thread ID,
+ * so writers on busy lifts do not contend on one cache line. A read sums the stripes.
+ * Each stripe starts on its own cache line.
+ */
+public class LiftGrid {
+
+    private static final int STRIPES = stripeCount();
+    private static final int LONGS_PER_LINE = 8;
+
+    private final int lifts;
+    private final int buckets;
+    private final int bucketMinutes;
+    private final int stripeLength;
+    private final AtomicLongArray counts;
+
+    /**
+     * Constructs an empty LiftGrid.
+     *
+     * @param lifts         the number of lifts; lift IDs run from 0 to lifts - 1
+     * @param buckets       the number of time buckets
+     * @param bucketMinutes the width of one time bucket
+     */
+    public LiftGrid(int lifts, int buckets, int bucketMinutes) {
+        this.lifts = lifts;
+        this.buckets = buckets;
+        this.bucketMinutes = bucketMinutes;
+        int cells = lifts * buckets;
+        this.stripeLength = (cells + LONGS_PER_LINE - 1) / LONGS_PER_LINE * LONGS_PER_LINE;
+        this.counts = new AtomicLongArray(stripeLength * STRIPES);
+    }
+
+    /**
+     * Counts one ride.
+     *
+     * @param liftID the lift, between 0 and lifts - 1
+     * @param time   the ride time in minutes, below buckets * bucketMinutes
+     */
+    public void add(int liftID, int time) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.incrementAndGet(stripe * stripeLength + liftID * buckets + time / bucketMinutes);
+    }
+
+    /**
+     * Returns the ride counts summed over the stripes.
+     *
+     * @return the counts indexed by [liftID][bucket]
+     */
+    public long[][] snapshot() {
+        long[][] grid = new long[lifts][buckets];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            int base = stripe * stripeLength;
+            for (int lift = 0; lift < lifts; lift++) {
+                long[] row = grid[lift];
+                for (int bucket = 0; bucket < buckets; bucket++) {
+                    row[bucket] += counts.get(base + lift * buckets + bucket);
+                }
+            }
+        }
+        return grid;
+    }
+
+    public int getBucketMinutes() {
+        return bucketMinutes;
+    }
+
+    /**
+     * Returns the number of stripes: the processor count rounded up to a power of two, at most 16.
+     */
+    private static int stripeCount() {
+        int processors = Math.min(16, Runtime.getRuntime().availableProcessors());
+        return processors <= 1 ? 1 : Integer.highestOneBit(processors - 1) << 1;
+    }
+}
@@ -0,0 +1,89 @@
+package query;
+
+import ingest.RideBatch;
+import ingest.RideSink;
+import storage.RideStore;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LiftUtilizationView keeps a LiftGrid of ride counts per (liftID, time bucket) for every
+ * (resortID, seasonID, dayID). It is updated on every ingested batch, so a utilization query
+ * sums a small fixed-size matrix instead of scanning the day's rides.
+ * Rides whose lift or time falls outside the grid are counted separately and otherwise ignored.
+ */
+public class LiftUtilizationView implements RideSink {
+
+    public static final String ATTRIBUTE = LiftUtilizationView.class.getName();
+
+    private final ConcurrentHashMap<Long, LiftGrid> days = new ConcurrentHashMap<>();
+    private final LongAdder outOfRange = new LongAdder();
+    private final int lifts;
+    private final int buckets;
+    private final int bucketMinutes;
+
+    /**
+     * Constructs an empty LiftUtilizationView.
+     *
+     * @param maxLiftID     the highest lift ID counted
+     * @param maxTime       the highest ride time counted, in minutes
+     * @param bucketMinutes the width of one time bucket, at least 1
+     * @throws IllegalArgumentException if bucketMinutes is below 1
+     */
+    public LiftUtilizationView(int maxLiftID, int maxTime, int bucketMinutes) {
+        if (bucketMinutes < 1) {
+            throw new IllegalArgumentException("bucketMinutes must be at least 1: " + bucketMinutes);
+        }
+        this.lifts = maxLiftID + 1;
+        this.buckets = maxTime / bucketMinutes + 1;
+        this.bucketMinutes = bucketMinutes;
+    }
+
+    /**
+     * Counts every ride of the batch in its day's grid.
+     * Consecutive rides of the same day reuse the lookup.
+     *
+     * @param batch the ingested rides
+     */
+    @Override
+    public void write(RideBatch batch) {
+        LiftGrid day = null;
+        long dayKey = -1;
+        for (int i = 0; i < batch.size(); i++) {
+            int liftID = batch.liftID(i);
+            int time = batch.time(i);
+            if (liftID >= lifts || time / bucketMinutes >= buckets) {
+                outOfRange.increment();
+                continue;
+            }
+            long key = RideStore.partitionKey(batch.resortID(i), batch.seasonID(i), batch.dayID(i));
+            if (day == null || key != dayKey) {
+                day = days.computeIfAbsent(key, k -> new LiftGrid(lifts, buckets, bucketMinutes));
+                dayKey = key;
+            }
+            day.add(liftID, time);
+        }
+    }
+
+    /**
+     * Returns the utilization grid of one day.
+     *
+     * @param resortID the resort ID
+     * @param seasonID the season ID
+     * @param dayID    the day ID
+     * @return the day's grid, or null if the day has no rides
+     */
+    public LiftGrid day(int resortID, int seasonID, int dayID) {
+        return days.get(RideStore.partitionKey(resortID, seasonID, dayID));
+    }
+
+    /**
+     * Returns the number of rides left out because their lift or time is outside the grid.
+     *
+     * @return the count of ignored rides
+     */
+    public long getOutOfRange() {
+        return outOfRange.sum();
+    }
+}
@@ -0,0 +1,138 @@
+package query;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * SkierTotals is a primitive open-addressing hash map from skierID to a running long total.
+ * Keys and values live in two parallel arrays with linear probing, so a lookup is a few array
+ * reads and no boxing. Writers take a write lock; readers probe optimistically and only fall back
+ * to a read lock if a write raced with them.
+ */
+public class SkierTotals {
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    /**
+     * The probe table. Replaced as a whole on resize so optimistic readers always see matching arrays.
+     */
+    private static final class Table {
+        final int[] keys;
+        final long[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new long[capacity];
+            mask = capacity - 1;
+            Arrays.fill(keys, EMPTY);
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private Table table;
+    private int size;
+
+    /**
+     * Constructs an empty SkierTotals.
+     *
+     * @param expectedSkiers the number of skiers expected, used to size the table
+     */
+    public SkierTotals(int expectedSkiers) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSkiers * 2 - 1)) << 1;
+        table = new Table(capacity);
+    }
+
+    /**
+     * Adds a delta to the skier's total, inserting the skier with a total of 0 first if needed.
+     *
+     * @param skierID the skier ID
+     * @param delta   the amount to add
+     * @return the skier's new total
+     */
+    public long add(int skierID, long delta) {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int slot = slotOf(t, skierID);
+            if (t.keys[slot] == EMPTY) {
+                if ((size + 1) * 2 > t.keys.length) {
+                    t = resize(t);
+                    slot = slotOf(t, skierID);
+                }
+                t.keys[slot] = skierID;
+                size++;
+            }
+            return t.values[slot] += delta;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the skier's total.
+     *
+     * @param skierID the skier ID
+     * @return the total, or -1 if the skier has no entry
+     */
+    public long get(int skierID) {
+        long stamp = lock.tryOptimisticRead();
+        long value = lookup(table, skierID);
+        if (lock.validate(stamp)) {
+            return value;
+        }
+        stamp = lock.readLock();
+        try {
+            return lookup(table, skierID);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of skiers in the map.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static long lookup(Table t, int skierID) {
+        int slot = slotOf(t, skierID);
+        return t.keys[slot] == skierID ? t.values[slot] : -1;
+    }
+
+    /**
+     * Finds the slot holding the key, or the empty slot where it would be inserted.
+     */
+    private static int slotOf(Table t, int skierID) {
+        int h = skierID * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & t.mask;
+        while (t.keys[slot] != EMPTY && t.keys[slot] != skierID) {
+            slot = (slot + 1) & t.mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the table and rehashes every entry. Called with the write lock held.
+     */
+    private Table resize(Table old) {
+        Table t = new Table(old.keys.length * 2);
+        for (int i = 0; i < old.keys.length; i++) {
+            if (old.keys[i] != EMPTY) {
+                int slot = slotOf(t, old.keys[i]);
+                t.keys[slot] = old.keys[i];
+                t.values[slot] = old.values[i];
+            }
+        }
+        table = t;
+        return t;
+    }
+}
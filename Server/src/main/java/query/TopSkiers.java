@@ -0,0 +1,106 @@
+package query;
+
+/**
+ * TopSkiers keeps the skiers with the highest total vertical of one day, maintained as rides are ingested.
+ * Per-skier totals live in a SkierTotals map; the leaders are a small array sorted by vertical, at most
+ * capacity long. Totals only grow, so a skier outside the leaders can only enter by passing the last one,
+ * and most rides are turned away by one volatile read of that threshold without taking the lock.
+ * Reading the top N copies N entries.
+ */
+public class TopSkiers {
+
+    private static final int EXPECTED_SKIERS = 1024;
+
+    private final SkierTotals totals = new SkierTotals(EXPECTED_SKIERS);
+    private final int[] skierIDs;
+    private final long[] verticals;
+    private int count;
+    // Vertical of the last leader once the array is full; rides that leave a skier at or below it change nothing
+    private volatile long threshold = -1;
+
+    /**
+     * Constructs an empty TopSkiers.
+     *
+     * @param capacity the largest N that can be queried
+     */
+    public TopSkiers(int capacity) {
+        skierIDs = new int[capacity];
+        verticals = new long[capacity];
+    }
+
+    /**
+     * Adds the vertical of one ride to the skier's total and updates the leaders.
+     *
+     * @param skierID  the skier ID
+     * @param vertical the vertical of the ride
+     */
+    public void add(int skierID, int vertical) {
+        long total = totals.add(skierID, vertical);
+        if (total <= threshold) {
+            return;
+        }
+        synchronized (this) {
+            offer(skierID, total);
+        }
+    }
+
+    /**
+     * Places the skier's new total among the leaders. Called with the lock held.
+     * Totals of one skier may arrive out of order from concurrent writers, so the larger one wins.
+     */
+    private void offer(int skierID, long total) {
+        int index = -1;
+        for (int i = 0; i < count; i++) {
+            if (skierIDs[i] == skierID) {
+                index = i;
+                break;
+            }
+        }
+        if (index >= 0) {
+            if (total <= verticals[index]) {
+                return;
+            }
+        } else if (count < skierIDs.length) {
+            index = count++;
+        } else if (total > verticals[count - 1]) {
+            index = count - 1;
+        } else {
+            return;
+        }
+        // Shift the leaders with a lower vertical down by one and drop the skier into the gap
+        while (index > 0 && verticals[index - 1] < total) {
+            skierIDs[index] = skierIDs[index - 1];
+            verticals[index] = verticals[index - 1];
+            index--;
+        }
+        skierIDs[index] = skierID;
+        verticals[index] = total;
+        if (count == skierIDs.length) {
+            threshold = verticals[count - 1];
+        }
+    }
+
+    /**
+     * Copies the leaders into the given arrays, highest vertical first.
+     *
+     * @param n             the number of leaders wanted
+     * @param outSkierIDs   receives the skier IDs
+     * @param outVerticals  receives the total verticals
+     * @return the number of leaders copied, at most n
+     */
+    public synchronized int top(int n, int[] outSkierIDs, long[] outVerticals) {
+        int size = Math.min(n, count);
+        System.arraycopy(skierIDs, 0, outSkierIDs, 0, size);
+        System.arraycopy(verticals, 0, outVerticals, 0, size);
+        return size;
+    }
+
+    /**
+     * Returns the largest N that can be queried.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return skierIDs.length;
+    }
+}
@@ -0,0 +1,74 @@
+package query;
+
+import ingest.RideBatch;
+import ingest.RideSink;
+import storage.RideStore;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UniqueSkierView keeps a HyperLogLog sketch of the skiers of every (resortID, seasonID, dayID).
+ * It is updated on every ingested batch; a day count reads one sketch and a season count merges
+ * the sketches of the season's days, so both cost a fixed amount of work however many rides exist.
+ */
+public class UniqueSkierView implements RideSink {
+
+    public static final String ATTRIBUTE = UniqueSkierView.class.getName();
+    private static final int DAYS_PER_SEASON = 365;
+
+    private final ConcurrentHashMap<Long, HyperLogLog> days = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the skier of every ride of the batch to its day's sketch.
+     * Consecutive rides of the same day reuse the lookup.
+     *
+     * @param batch the ingested rides
+     */
+    @Override
+    public void write(RideBatch batch) {
+        HyperLogLog day = null;
+        long dayKey = -1;
+        for (int i = 0; i < batch.size(); i++) {
+            long key = RideStore.partitionKey(batch.resortID(i), batch.seasonID(i), batch.dayID(i));
+            if (day == null || key != dayKey) {
+                day = days.computeIfAbsent(key, k -> new HyperLogLog());
+                dayKey = key;
+            }
+            day.add(batch.skierID(i));
+        }
+    }
+
+    /**
+     * Returns the estimated number of unique skiers of one day.
+     *
+     * @param resortID the resort ID
+     * @param seasonID the season ID
+     * @param dayID    the day ID
+     * @return the estimate, or -1 if the day has no rides
+     */
+    public long dayCount(int resortID, int seasonID, int dayID) {
+        HyperLogLog day = days.get(RideStore.partitionKey(resortID, seasonID, dayID));
+        return day == null ? -1 : day.estimate();
+    }
+
+    /**
+     * Returns the estimated number of unique skiers of a season at one resort, merging the sketches of its days.
+     *
+     * @param resortID the resort ID
+     * @param seasonID the season ID
+     * @return the estimate, or -1 if the season has no rides
+     */
+    public long seasonCount(int resortID, int seasonID) {
+        HyperLogLog season = null;
+        for (int dayID = 1; dayID <= DAYS_PER_SEASON; dayID++) {
+            HyperLogLog day = days.get(RideStore.partitionKey(resortID, seasonID, dayID));
+            if (day != null) {
+                if (season == null) {
+                    season = new HyperLogLog();
+                }
+                season.merge(day);
+            }
+        }
+        return season == null ? -1 : season.estimate();
+    }
+}
@@ -0,0 +1,98 @@
+package query;
+
+import entity.VerticalElement;
+import ingest.RideBatch;
+import ingest.RideSink;
+import storage.RideStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * VerticalView is a materialized view of total vertical per (skier, season), kept both over all
+ * resorts and per resort. It is updated on every ingested batch, so a vertical query is a hash
+ * lookup per season instead of a scan over raw rides.
+ */
+public class VerticalView implements RideSink {
+
+    /** Key used in the resort map for the totals over all resorts; resortIDs are never negative. */
+    private static final int ALL_RESORTS = -1;
+    private static final int EXPECTED_SKIERS = 1024;
+
+    // resortID (or ALL_RESORTS) -> seasonID -> skier totals
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, SkierTotals>> totals = new ConcurrentHashMap<>();
+    // skierID -> number of rides over all resorts and seasons, used as the skier's data version
+    private final SkierTotals rideCounts = new SkierTotals(EXPECTED_SKIERS);
+
+    /**
+     * Adds the vertical of every ride of the batch to the skier's season totals.
+     *
+     * @param batch the ingested rides
+     */
+    @Override
+    public void write(RideBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            int vertical = RideStore.verticalOf(batch.liftID(i));
+            totalsFor(ALL_RESORTS, batch.seasonID(i)).add(batch.skierID(i), vertical);
+            totalsFor(batch.resortID(i), batch.seasonID(i)).add(batch.skierID(i), vertical);
+            rideCounts.add(batch.skierID(i), 1);
+        }
+    }
+
+    /**
+     * Returns the skier's data version: it changes whenever a ride of the skier is ingested.
+     * Responses derived from this view can be cached and validated against it.
+     *
+     * @param skierID the skier ID
+     * @return the version, 0 if the skier has no rides
+     */
+    public long version(int skierID) {
+        return Math.max(0, rideCounts.get(skierID));
+    }
+
+    /**
+     * Returns the skier's total vertical per season, oldest season first.
+     *
+     * @param skierID  the skier ID
+     * @param resortID the resort to restrict to, non-negative, or null for all resorts
+     * @param seasonID the season to restrict to, or null for every season
+     * @return one element per season the skier has rides in; empty if none
+     */
+    public List<VerticalElement> verticals(int skierID, Integer resortID, Integer seasonID) {
+        List<VerticalElement> result = new ArrayList<>();
+        Map<Integer, SkierTotals> seasons = totals.get(resortID == null ? ALL_RESORTS : resortID);
+        if (seasons == null) {
+            return result;
+        }
+        if (seasonID != null) {
+            SkierTotals season = seasons.get(seasonID);
+            long total = season == null ? -1 : season.get(skierID);
+            if (total >= 0) {
+                result.add(new VerticalElement(String.valueOf(seasonID), (int) total));
+            }
+            return result;
+        }
+        for (Map.Entry<Integer, SkierTotals> season : new TreeMap<>(seasons).entrySet()) {
+            long total = season.getValue().get(skierID);
+            if (total >= 0) {
+                result.add(new VerticalElement(String.valueOf(season.getKey()), (int) total));
+            }
+        }
+        return result;
+    }
+
+    private SkierTotals totalsFor(int resortID, int seasonID) {
+        ConcurrentHashMap<Integer, SkierTotals> seasons = totals.get(resortID);
+        if (seasons == null) {
+            seasons = totals.computeIfAbsent(resortID, k -> new ConcurrentHashMap<>());
+        }
+        SkierTotals season = seasons.get(seasonID);
+        if (season == null) {
+            season = seasons.computeIfAbsent(seasonID, k -> new SkierTotals(EXPECTED_SKIERS));
+        }
+        return season;
+    }
+}
@@ -0,0 +1,72 @@
+package route;
+
+/**
+ * Route is the typed result of routing a request path: the matched kind and the IDs taken from the path.
+ * It is mutable so one instance can be reused per thread, keeping routing free of allocation.
+ */
+public class Route {
+
+    /**
+     * Path parameters a RoutePattern can capture.
+     */
+    public enum Param {
+        RESORT_ID, SEASON_ID, DAY_ID, SKIER_ID
+    }
+
+    private RouteKind kind;
+    private int resortID;
+    private int seasonID;
+    private int dayID;
+    private int skierID;
+
+    /**
+     * Clears the route before matching a new path.
+     */
+    void reset() {
+        kind = null;
+        resortID = -1;
+        seasonID = -1;
+        dayID = -1;
+        skierID = -1;
+    }
+
+    void set(Param param, int value) {
+        switch (param) {
+            case RESORT_ID:
+                resortID = value;
+                break;
+            case SEASON_ID:
+                seasonID = value;
+                break;
+            case DAY_ID:
+                dayID = value;
+                break;
+            default:
+                skierID = value;
+        }
+    }
+
+    void setKind(RouteKind kind) {
+        this.kind = kind;
+    }
+
+    public RouteKind getKind() {
+        return kind;
+    }
+
+    public int getResortID() {
+        return resortID;
+    }
+
+    public int getSeasonID() {
+        return seasonID;
+    }
+
+    public int getDayID() {
+        return dayID;
+    }
+
+    public int getSkierID() {
+        return skierID;
+    }
+}
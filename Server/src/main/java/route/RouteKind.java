@@ -0,0 +1,31 @@
+package route;
+
+/**
+ * RouteKind names the request paths the servlets understand.
+ */
+public enum RouteKind {
+
+    /** /{skierID}/vertical */
+    SKIER_VERTICAL,
+
+    /** /{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID} */
+    SKIER_DAY,
+
+    /** /liftrides */
+    RIDE_BATCH,
+
+    /** /{resortID}/seasons/{seasonID}/days/{dayID}/leaderboard */
+    DAY_LEADERBOARD,
+
+    /** /{resortID}/seasons/{seasonID}/days/{dayID}/skiers */
+    DAY_SKIERS,
+
+    /** /{resortID}/seasons/{seasonID}/skiers */
+    SEASON_SKIERS,
+
+    /** /{resortID}/seasons/{seasonID}/days/{dayID}/lifts */
+    DAY_LIFTS,
+
+    /** /{resortID}/seasons/{seasonID}/days/{dayID}/rides */
+    DAY_RIDES
+}
@@ -0,0 +1,112 @@
+package route;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RoutePattern is a path template such as "/{resortID}/seasons/{seasonID}" compiled once into the
+ * literal text between parameters. Matching walks the path a single time, comparing literals in place
+ * and accumulating each numeric parameter digit by digit, so it creates no strings, arrays or boxes.
+ */
+public class RoutePattern {
+
+    private final RouteKind kind;
+    private final String[] literals;
+    private final Route.Param[] params;
+
+    /**
+     * Compiles a path template. Parameters are written as {resortID}, {seasonID}, {dayID} or {skierID}
+     * and always match a non-negative int.
+     *
+     * @param kind     the kind reported when the pattern matches
+     * @param template the path template
+     * @return the compiled pattern
+     * @throws IllegalArgumentException if the template names an unknown parameter
+     */
+    public static RoutePattern compile(RouteKind kind, String template) {
+        List<String> literals = new ArrayList<>();
+        List<Route.Param> params = new ArrayList<>();
+        int start = 0;
+        int open;
+        while ((open = template.indexOf('{', start)) >= 0) {
+            int close = template.indexOf('}', open);
+            literals.add(template.substring(start, open));
+            params.add(paramOf(template.substring(open + 1, close)));
+            start = close + 1;
+        }
+        literals.add(template.substring(start));
+        return new RoutePattern(kind, literals.toArray(new String[0]), params.toArray(new Route.Param[0]));
+    }
+
+    private RoutePattern(RouteKind kind, String[] literals, Route.Param[] params) {
+        this.kind = kind;
+        this.literals = literals;
+        this.params = params;
+    }
+
+    /**
+     * Matches a path against the pattern. A single trailing slash is accepted.
+     *
+     * @param path the request path info
+     * @param out  the route to fill on success; its contents are undefined on failure
+     * @return true if the whole path matches
+     */
+    public boolean match(String path, Route out) {
+        out.reset();
+        int pos = 0;
+        int length = path.length();
+        for (int i = 0; i < params.length; i++) {
+            if (!path.startsWith(literals[i], pos)) {
+                return false;
+            }
+            pos += literals[i].length();
+
+            // Parse the parameter in place, rejecting empty values and int overflow
+            int digitsStart = pos;
+            int value = 0;
+            while (pos < length) {
+                char c = path.charAt(pos);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                if (value > (Integer.MAX_VALUE - (c - '0')) / 10) {
+                    return false;
+                }
+                value = value * 10 + (c - '0');
+                pos++;
+            }
+            if (pos == digitsStart) {
+                return false;
+            }
+            out.set(params[i], value);
+        }
+        String tail = literals[params.length];
+        if (!path.startsWith(tail, pos)) {
+            return false;
+        }
+        pos += tail.length();
+        if (pos == length - 1 && path.charAt(pos) == '/') {
+            pos++;
+        }
+        if (pos != length) {
+            return false;
+        }
+        out.setKind(kind);
+        return true;
+    }
+
+    private static Route.Param paramOf(String name) {
+        switch (name) {
+            case "resortID":
+                return Route.Param.RESORT_ID;
+            case "seasonID":
+                return Route.Param.SEASON_ID;
+            case "dayID":
+                return Route.Param.DAY_ID;
+            case "skierID":
+                return Route.Param.SKIER_ID;
+            default:
+                throw new IllegalArgumentException("Unknown path parameter: " + name);
+        }
+    }
+}
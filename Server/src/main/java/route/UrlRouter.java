@@ -0,0 +1,64 @@
+package route;
+
+/**
+ * UrlRouter matches a request path against a fixed list of precompiled patterns.
+ * Days outside 1..365 never match, mirroring the original URL validation.
+ */
+public class UrlRouter {
+
+    private final RoutePattern[] patterns;
+
+    /**
+     * Constructs a UrlRouter.
+     *
+     * @param patterns the patterns, tried in order
+     */
+    public UrlRouter(RoutePattern... patterns) {
+        this.patterns = patterns.clone();
+    }
+
+    /**
+     * Returns the router for the /skiers servlet.
+     *
+     * @return a router for the skier routes
+     */
+    public static UrlRouter skiers() {
+        return new UrlRouter(
+                RoutePattern.compile(RouteKind.SKIER_DAY, "/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}"),
+                RoutePattern.compile(RouteKind.SKIER_VERTICAL, "/{skierID}/vertical"),
+                RoutePattern.compile(RouteKind.RIDE_BATCH, "/liftrides"));
+    }
+
+    /**
+     * Returns the router for the /resorts servlet.
+     *
+     * @return a router for the resort routes
+     */
+    public static UrlRouter resorts() {
+        return new UrlRouter(
+                RoutePattern.compile(RouteKind.DAY_LEADERBOARD, "/{resortID}/seasons/{seasonID}/days/{dayID}/leaderboard"),
+                RoutePattern.compile(RouteKind.DAY_SKIERS, "/{resortID}/seasons/{seasonID}/days/{dayID}/skiers"),
+                RoutePattern.compile(RouteKind.SEASON_SKIERS, "/{resortID}/seasons/{seasonID}/skiers"),
+                RoutePattern.compile(RouteKind.DAY_LIFTS, "/{resortID}/seasons/{seasonID}/days/{dayID}/lifts"),
+                RoutePattern.compile(RouteKind.DAY_RIDES, "/{resortID}/seasons/{seasonID}/days/{dayID}/rides"));
+    }
+
+    /**
+     * Routes a path.
+     *
+     * @param path the request path info, may be null
+     * @param out  the route to fill
+     * @return true if a pattern matched, in which case out holds the kind and IDs
+     */
+    public boolean route(String path, Route out) {
+        if (path == null) {
+            return false;
+        }
+        for (RoutePattern pattern : patterns) {
+            if (pattern.match(path, out)) {
+                return out.getDayID() == -1 || (out.getDayID() >= 1 && out.getDayID() <= 365);
+            }
+        }
+        return false;
+    }
+}
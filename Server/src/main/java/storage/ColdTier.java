@@ -0,0 +1,196 @@
+package storage;
+
+import trace.StorageEvent;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ColdTier bounds what frozen days keep resident. A FrozenDay only holds its header; the file is mapped on
+ * first access and the mapping is dropped again once more than the budget of files or mapped bytes is open.
+ * Mappings are evicted in clock order: a sweep skips, and clears, days read since the last sweep, so the hot
+ * path of a read only sets a flag. A dropped mapping is unmapped by the garbage collector once the last
+ * reader still holding it is done, so eviction never invalidates a scan in progress.
+ *
+ * Next to the mappings, ColdTier caches the per-skier summaries decoded from frozen days: a skier's day
+ * vertical, or the fact that the skier has no rides that day. Files never change, so a summary is valid as long
+ * as its file's generation is in use. Repeated day lookups of a skier are then answered without touching
+ * the file at all. The summaries are split into segments, each an access-ordered LinkedHashMap under
+ * its own lock with an equal share of the entry budget.
+ */
+public class ColdTier {
+
+    /** Returned by summary() when the skier's summary is not cached. */
+    static final long MISSING = Long.MIN_VALUE;
+    private static final int SEGMENTS = 16;
+
+    /**
+     * One independently locked LRU segment of summaries.
+     */
+    private static final class Segment {
+        final LinkedHashMap<Long, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    }
+
+    private final int maxOpenFiles;
+    private final long maxMappedBytes;
+    // Mapped days in clock order, guarded by this
+    private final ArrayDeque<FrozenDay> mapped = new ArrayDeque<>();
+    private long mappedBytes;
+    private final Segment[] segments;
+    private final int maxSegmentEntries;
+
+    /**
+     * Constructs a ColdTier.
+     *
+     * @param maxOpenFiles   the number of frozen day files that may be mapped at once, at least 1
+     * @param maxMappedBytes the total size of the mapped files, exceeded only to map a single larger file
+     * @param maxSummaries   the number of per-skier summaries kept, or 0 to keep none
+     */
+    public ColdTier(int maxOpenFiles, long maxMappedBytes, int maxSummaries) {
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+        this.maxMappedBytes = maxMappedBytes;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        this.maxSegmentEntries = maxSummaries / SEGMENTS;
+    }
+
+    /**
+     * Returns the mapping of a day, mapping the file and evicting other days first if the day is not mapped.
+     *
+     * @param day the frozen day
+     * @return the day's mapping
+     * @throws IOException if the file cannot be mapped
+     */
+    synchronized FrozenDay.Mapping map(FrozenDay day) throws IOException {
+        FrozenDay.Mapping mapping = day.mapping;
+        if (mapping != null) {
+            return mapping;
+        }
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        mapping = day.mapFile();
+        // The new day counts as read, so the sweep below passes over it once
+        day.referenced = true;
+        day.mapping = mapping;
+        mapped.addLast(day);
+        mappedBytes += day.getFileBytes();
+        evict();
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "map";
+            event.rides = day.rideCount();
+            event.bytes = day.getFileBytes();
+            event.commit();
+        }
+        return mapping;
+    }
+
+    /**
+     * Takes a day out of the tier for good, keeping it mapped until the object is collected. Called before
+     * the day's file is deleted, so readers still holding the day can read it after the file is gone.
+     *
+     * @param day the frozen day
+     * @throws IOException if the file cannot be mapped
+     */
+    synchronized void retire(FrozenDay day) throws IOException {
+        map(day);
+        if (mapped.remove(day)) {
+            mappedBytes -= day.getFileBytes();
+        }
+    }
+
+    /**
+     * Unmaps days in clock order until the tier is within its budget; the most recently mapped day stays.
+     */
+    private void evict() {
+        // Two rounds clear every flag, so the sweep ends even if every day was read
+        for (int visits = 2 * mapped.size(); visits > 0 && mapped.size() > 1
+                && (mapped.size() > maxOpenFiles || mappedBytes > maxMappedBytes); visits--) {
+            FrozenDay day = mapped.pollFirst();
+            if (day.referenced) {
+                day.referenced = false;
+                mapped.addLast(day);
+            } else {
+                day.mapping = null;
+                mappedBytes -= day.getFileBytes();
+            }
+        }
+    }
+
+    /**
+     * Returns a cached summary.
+     *
+     * @param generation the generation of the file the summary was decoded from
+     * @param skierID    the skier ID
+     * @return the skier's day vertical, -1 if the skier has no rides in the file, or MISSING if not cached
+     */
+    long summary(long generation, int skierID) {
+        if (maxSegmentEntries == 0) {
+            return MISSING;
+        }
+        Long key = summaryKey(generation, skierID);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Long vertical = segment.entries.get(key);
+            return vertical == null ? MISSING : vertical;
+        }
+    }
+
+    /**
+     * Caches a summary, evicting the least recently used summaries of its segment.
+     *
+     * @param generation the generation of the file the summary was decoded from
+     * @param skierID    the skier ID
+     * @param vertical   the skier's day vertical, or -1 if the skier has no rides in the file
+     */
+    void putSummary(long generation, int skierID, long vertical) {
+        if (maxSegmentEntries == 0) {
+            return;
+        }
+        Long key = summaryKey(generation, skierID);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.entries.put(key, vertical);
+            Iterator<Map.Entry<Long, Long>> eldest = segment.entries.entrySet().iterator();
+            while (segment.entries.size() > maxSegmentEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of frozen day files currently mapped.
+     *
+     * @return the number of mapped files
+     */
+    public synchronized int getOpenFiles() {
+        return mapped.size();
+    }
+
+    /**
+     * Returns the total size of the frozen day files currently mapped.
+     *
+     * @return the mapped bytes
+     */
+    public synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    private Segment segmentFor(Long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return segments[(int) (h >>> 60) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Packs a file generation and a skierID into one key; generations are counters far below 2^31.
+     */
+    private static long summaryKey(long generation, int skierID) {
+        return (generation << 32) | (skierID & 0xFFFFFFFFL);
+    }
+}
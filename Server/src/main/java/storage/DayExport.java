@@ -0,0 +1,208 @@
+package storage;
+
+import java.io.IOException;
+
+/**
+ * DayExport reads all rides of one day page by page, straight from the columns of its stores, in a fixed
+ * order: each frozen file, then each shard of the sealed partition, then the shards of the active partition.
+ * It works on a snapshot of the day's stores and of their shard sizes, and paging allocates nothing per ride.
+ *
+ * The active partition keeps growing while it is exported, so a cursor into it holds how many rows of each
+ * shard were exported, and every page goes on from there in each shard. Rides appended while a page is
+ * written are left for a later page, including rides in shards an earlier page already read; the export
+ * ends with the first page that reaches every ride appended before it.
+ *
+ * Cursors stay valid while the day keeps the same stores; rides keep being appended to the active partition
+ * without invalidating them. Sealing, freezing or merging the day changes its fingerprint, and cursors
+ * issued before are no longer accepted, so the client must restart the export.
+ */
+public class DayExport {
+
+    private final DayState state;
+    private final long fingerprint;
+    // Rows per shard of each store at the time of the snapshot
+    private final int[][] sizes;
+    // The index of the active partition among the stores, or -1 if the day has none
+    private final int activeStore;
+
+    /**
+     * Constructs a DayExport over the current stores of a day; use RideStore.export().
+     */
+    DayExport(DayState state) {
+        this.state = state;
+        int stores = state.frozen.length + (state.sealed == null ? 0 : 1) + (state.active == null ? 0 : 1);
+        this.sizes = new int[stores][];
+        long h = state.epoch * 0x9E3779B97F4A7C15L + state.sealedGeneration;
+        for (int i = 0; i < state.frozen.length; i++) {
+            sizes[i] = new int[] {state.frozen[i].rideCount()};
+            h = (h ^ state.frozen[i].getGeneration()) * 0xBF58476D1CE4E5B9L;
+        }
+        int next = state.frozen.length;
+        if (state.sealed != null) {
+            sizes[next++] = shardSizes(state.sealed);
+        }
+        if (state.active != null) {
+            sizes[next] = shardSizes(state.active);
+        }
+        this.activeStore = state.active == null ? -1 : next;
+        this.fingerprint = h ^ (h >>> 31);
+    }
+
+    /**
+     * Returns the cursor at the first ride of the day.
+     *
+     * @return the start cursor
+     */
+    public RideCursor start() {
+        return activeStore == 0 ? new RideCursor(fingerprint, 0, new int[sizes[0].length])
+                : new RideCursor(fingerprint, 0, 0, 0);
+    }
+
+    /**
+     * Returns whether a cursor was issued for the day's current stores and points into them.
+     *
+     * @param cursor a cursor from a previous page
+     * @return false if the cursor is stale or out of range
+     */
+    public boolean accepts(RideCursor cursor) {
+        if (cursor.getFingerprint() != fingerprint || cursor.getStore() >= sizes.length) {
+            return false;
+        }
+        int[] shardRows = cursor.getShardRows();
+        if (cursor.getStore() != activeStore) {
+            return shardRows == null && cursor.getShard() < sizes[cursor.getStore()].length
+                    && cursor.getRow() <= sizes[cursor.getStore()][cursor.getShard()];
+        }
+        if (shardRows == null || shardRows.length != sizes[activeStore].length) {
+            return false;
+        }
+        for (int shard = 0; shard < shardRows.length; shard++) {
+            if (shardRows[shard] > sizes[activeStore][shard]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the cursor a given number of rides after another, without reading any ride.
+     *
+     * @param from  an accepted cursor
+     * @param rides the number of rides to skip
+     * @return the cursor after them, or null if no rides are left after them
+     */
+    public RideCursor advance(RideCursor from, int rides) {
+        if (from.getStore() == activeStore) {
+            return advanceActive(from.getShardRows().clone(), rides);
+        }
+        int store = from.getStore();
+        int shard = from.getShard();
+        long row = (long) from.getRow() + rides;
+        while (store < sizes.length) {
+            if (store == activeStore) {
+                return advanceActive(new int[sizes[store].length], row);
+            }
+            int size = sizes[store][shard];
+            if (row < size) {
+                return new RideCursor(fingerprint, store, shard, (int) row);
+            }
+            row -= size;
+            if (++shard == sizes[store].length) {
+                shard = 0;
+                store++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes rides from the shards of the active partition in order, each after the rows already exported.
+     *
+     * @param shardRows the rows exported from each shard, updated in place
+     * @param rides     the number of rides to skip
+     * @return the cursor after them, or null if every ride of the snapshot is exported with them
+     */
+    private RideCursor advanceActive(int[] shardRows, long rides) {
+        boolean left = false;
+        for (int shard = 0; shard < shardRows.length; shard++) {
+            int taken = (int) Math.min(rides, sizes[activeStore][shard] - shardRows[shard]);
+            shardRows[shard] += taken;
+            rides -= taken;
+            left |= shardRows[shard] < sizes[activeStore][shard];
+        }
+        return left ? new RideCursor(fingerprint, activeStore, shardRows) : null;
+    }
+
+    /**
+     * Reads the rides from one cursor up to another, or up to the end of the day.
+     *
+     * @param from    an accepted cursor
+     * @param to      a cursor returned by advance(from, ...), or null to read to the end
+     * @param visitor receives the rides
+     * @throws IOException if the visitor fails
+     */
+    public void scan(RideCursor from, RideCursor to, RideVisitor visitor) throws IOException {
+        int endStore = to == null ? sizes.length : to.getStore();
+        int store = from.getStore();
+        int shard = from.getShard();
+        int row = from.getRow();
+        while (store < sizes.length && store <= endStore && store != activeStore) {
+            boolean last = to != null && store == endStore && shard == to.getShard();
+            int end = last ? to.getRow() : sizes[store][shard];
+            scanShard(store, shard, row, end, visitor);
+            if (last) {
+                return;
+            }
+            row = 0;
+            if (++shard == sizes[store].length) {
+                shard = 0;
+                store++;
+            }
+        }
+        if (store == activeStore && store <= endStore) {
+            int[] begin = from.getStore() == activeStore ? from.getShardRows() : new int[sizes[store].length];
+            int[] end = to == null ? sizes[store] : to.getShardRows();
+            for (shard = 0; shard < begin.length; shard++) {
+                scanShard(store, shard, begin[shard], end[shard], visitor);
+            }
+        }
+    }
+
+    /**
+     * Reads the rows [from, to) of one shard of a store.
+     */
+    private void scanShard(int store, int shard, int from, int to, RideVisitor visitor) throws IOException {
+        if (store < state.frozen.length) {
+            state.frozen[store].scan(from, to, visitor);
+            return;
+        }
+        DayPartition partition = store == state.frozen.length && state.sealed != null ? state.sealed : state.active;
+        RideShard rides = partition.shard(shard);
+        for (int row = from; row < to; row++) {
+            visitor.visit(rides.skierIDAt(row), rides.timeAt(row), rides.liftIDAt(row), rides.waitTimeAt(row));
+        }
+    }
+
+    /**
+     * Returns the number of rides in the snapshot.
+     *
+     * @return the ride count
+     */
+    public long rideCount() {
+        long total = 0;
+        for (int[] store : sizes) {
+            for (int size : store) {
+                total += size;
+            }
+        }
+        return total;
+    }
+
+    private static int[] shardSizes(DayPartition partition) {
+        int[] result = new int[partition.shardCount()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = partition.shard(i).size();
+        }
+        return result;
+    }
+}
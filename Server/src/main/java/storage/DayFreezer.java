@@ -0,0 +1,291 @@
+package storage;
+
+import ingest.RideBatch;
+import ingest.RideSink;
+import ingest.WriteGate;
+import trace.StorageEvent;
+import wal.WriteAheadLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * DayFreezer moves completed days off the heap. A day whose active partition has received no ride for the
+ * idle period is sealed, written to a compressed FrozenDay file sorted by skier and swapped in for the heap partition.
+ * Rides arriving for a frozen day start a new heap partition that is frozen later into another small file;
+ * once a day has several files they are merged into one, so lookups stay a single index search per day.
+ *
+ * Sealing runs under the WriteGate and records the write-ahead log position at that moment in the file,
+ * so replay after a restart skips exactly the rides that are already frozen. After each round the log segments
+ * holding only frozen rides are deleted.
+ *
+ * The heap partitions are the hot tier of the store; frozen files form the cold tier, mapped on demand
+ * within the ColdTier's budget, so a season of frozen days does not have to stay resident.
+ */
+public class DayFreezer implements Closeable {
+
+    private final RideStore store;
+    private final Path dir;
+    private final ColdTier tier;
+    private final long idleMillis;
+    private final int mergeFiles;
+    private final ScheduledExecutorService scheduler;
+    private final BiConsumer<String, Throwable> errorLog;
+    private WriteGate gate;
+    private WriteAheadLog wal;
+
+    /**
+     * Constructs a DayFreezer; call load() before the write-ahead log is replayed, then start().
+     *
+     * @param store      the ride store whose days are frozen
+     * @param dir        the directory holding frozen day files
+     * @param tier       the tier managing the mappings and summaries of frozen days
+     * @param idleMillis how long a day must receive no rides before it is frozen
+     * @param mergeFiles the number of files a day may have before they are merged
+     * @param errorLog   receives the failures of background rounds, with a message naming the day
+     * @throws IOException if the directory cannot be created
+     */
+    public DayFreezer(RideStore store, Path dir, ColdTier tier, long idleMillis, int mergeFiles,
+                      BiConsumer<String, Throwable> errorLog) throws IOException {
+        Files.createDirectories(dir);
+        this.errorLog = errorLog;
+        this.store = store;
+        this.dir = dir;
+        this.tier = tier;
+        this.idleMillis = idleMillis;
+        this.mergeFiles = Math.max(2, mergeFiles);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "day-freezer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds every frozen day file in the directory to the store and streams its rides into the given sink,
+     * so views built from ingested rides include them; files are mapped one after another within the tier's budget. Files replaced by a merge that finished before a crash
+     * and leftover temporary files are deleted.
+     *
+     * @param rebuildTarget the sink receiving the frozen rides, or null
+     * @return the number of frozen rides loaded
+     * @throws IOException if a file cannot be read
+     */
+    public long load(RideSink rebuildTarget) throws IOException {
+        List<FrozenDay> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(path);
+                } else if (name.endsWith(FrozenDay.SUFFIX)) {
+                    files.add(FrozenDay.open(path, tier));
+                }
+            }
+        }
+
+        // A merged file supersedes every older file of its day
+        Map<Long, Long> superseded = new HashMap<>();
+        for (FrozenDay file : files) {
+            superseded.merge(keyOf(file), file.getSupersedes(), Math::max);
+        }
+        long rides = 0;
+        RideBatch batch = new RideBatch(1024);
+        for (FrozenDay file : files) {
+            if (file.getGeneration() <= superseded.get(keyOf(file))) {
+                Files.delete(file.getPath());
+                continue;
+            }
+            store.load(file);
+            rides += file.rideCount();
+            if (rebuildTarget != null) {
+                file.scan(0, file.rideCount(), (skierID, time, liftID, waitTime) -> {
+                    if (batch.isFull()) {
+                        rebuildTarget.write(batch);
+                        batch.clear();
+                    }
+                    batch.add(file.getResortID(), file.getSeasonID(), file.getDayID(), skierID, time, liftID, waitTime);
+                });
+                rebuildTarget.write(batch);
+                batch.clear();
+            }
+        }
+        return rides;
+    }
+
+    /**
+     * Starts checking for idle days in the background.
+     *
+     * @param gate           the gate every batch passes on its way to the write-ahead log and the store
+     * @param wal            the write-ahead log whose positions are recorded and whose segments are retired, or null
+     * @param intervalMillis how often days are checked
+     */
+    public void start(WriteGate gate, WriteAheadLog wal, long intervalMillis) {
+        this.gate = gate;
+        this.wal = wal;
+        scheduler.scheduleWithFixedDelay(this::freezeIdleDays, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Freezes every idle day and merges days that have accumulated too many files, then deletes the log segments
+     * no longer needed for replay. A day that fails is reported to the error log with its partition key and
+     * retried next round; the other days go on.
+     */
+    public void freezeIdleDays() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        for (Long key : store.dayKeys()) {
+            try {
+                freezeDay(key, cutoff);
+            } catch (IOException | RuntimeException e) {
+                errorLog.accept("Failed to freeze or merge day partition " + key + " in " + dir, e);
+            }
+        }
+        if (wal != null) {
+            retireWalSegments();
+        }
+    }
+
+    /**
+     * Deletes the write-ahead log segments whose rides are all in frozen files. The position is taken under the
+     * gate, so no logged ride is missing from the store while the days are inspected.
+     */
+    private void retireWalSegments() {
+        long[] retained = new long[1];
+        gate.exclusive(() -> retained[0] = store.retainedWalPosition(wal.position()));
+        try {
+            wal.deleteSegmentsBefore(retained[0]);
+        } catch (IOException e) {
+            errorLog.accept("Failed to delete write-ahead log segments before position " + retained[0], e);
+        }
+    }
+
+    /**
+     * Seals and freezes one day if it has been idle since the cutoff, then merges its files if there are too many.
+     *
+     * @param key    the day's partition key
+     * @param cutoff the time of the last write before which an active partition is idle
+     * @throws IOException if a file cannot be written
+     */
+    private void freezeDay(long key, long cutoff) throws IOException {
+        DayState state = store.dayState(key);
+        if (state == null) {
+            return;
+        }
+        if (state.sealed == null && state.active != null && state.active.getLastWriteMillis() < cutoff) {
+            // Writers wait while the gate is held, so the seal is recorded on its own
+            StorageEvent event = new StorageEvent();
+            event.begin();
+            DayState[] sealed = new DayState[1];
+            gate.exclusive(() -> sealed[0] = store.seal(key, wal == null ? 0 : wal.position()));
+            state = sealed[0];
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = "seal";
+                event.rides = state == null || state.sealed == null ? 0 : state.sealed.size();
+                event.commit();
+            }
+        }
+        if (state != null && state.sealed != null) {
+            freeze(key, state);
+            state = store.dayState(key);
+        }
+        if (state != null && state.frozen.length >= mergeFiles) {
+            merge(key, state.frozen);
+        }
+    }
+
+    /**
+     * Writes the sealed partition of a day to a file and swaps the file in.
+     *
+     * @param key   the day's partition key
+     * @param state the day's state holding the sealed partition
+     * @throws IOException if the file cannot be written
+     */
+    private void freeze(long key, DayState state) throws IOException {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        DayPartition partition = state.sealed;
+        RideColumns rides = new RideColumns((int) partition.size());
+        rides.addAll(partition);
+        rides.sortBySkierAndTime();
+        FrozenDay file = FrozenDay.write(dir, tier, partition.getResortID(), partition.getSeasonID(), partition.getDayID(),
+                state.sealedGeneration, 0, state.sealedWalPosition, rides);
+        store.freeze(key, file);
+        commit(event, "freeze", file);
+    }
+
+    /**
+     * Merges the files of a day into one, swaps it in and deletes the inputs.
+     *
+     * @param key    the day's partition key
+     * @param inputs the files to merge
+     * @throws IOException if the merged file cannot be written
+     */
+    private void merge(long key, FrozenDay[] inputs) throws IOException {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        long rideCount = 0;
+        long supersedes = 0;
+        long position = 0;
+        for (FrozenDay file : inputs) {
+            rideCount += file.rideCount();
+            supersedes = Math.max(supersedes, file.getGeneration());
+            position = Math.max(position, file.getWalPosition());
+        }
+        RideColumns rides = new RideColumns((int) rideCount);
+        for (FrozenDay file : inputs) {
+            rides.addAll(file);
+        }
+        rides.sortBySkierAndTime();
+        FrozenDay first = inputs[0];
+        FrozenDay merged = FrozenDay.write(dir, tier, first.getResortID(), first.getSeasonID(), first.getDayID(),
+                store.nextGeneration(), supersedes, position, rides);
+        store.merge(key, inputs, merged);
+        // Readers still holding an input keep a valid mapping after the file is unlinked
+        for (FrozenDay file : inputs) {
+            tier.retire(file);
+            Files.deleteIfExists(file.getPath());
+        }
+        commit(event, "merge", merged);
+    }
+
+    /**
+     * Ends an event for an operation that wrote a file and commits it if it is recorded.
+     */
+    private static void commit(StorageEvent event, String operation, FrozenDay file) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.rides = file.rideCount();
+            event.bytes = file.getFileBytes();
+            event.commit();
+        }
+    }
+
+    /**
+     * Stops the background job, waiting for a freeze in progress to finish.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long keyOf(FrozenDay file) {
+        return RideStore.partitionKey(file.getResortID(), file.getSeasonID(), file.getDayID());
+    }
+}
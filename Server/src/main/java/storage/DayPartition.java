@@ -0,0 +1,145 @@
+package storage;
+
+/**
+ * DayPartition holds all rides of one (resortID, seasonID, dayID).
+ * Rides are striped over a power-of-two number of shards by skierID, so concurrent
+ * writers for different skiers rarely contend and all rides of one skier share a shard.
+ */
+public class DayPartition {
+
+    private final int resortID;
+    private final int seasonID;
+    private final int dayID;
+    private final RideShard[] shards;
+    private final int shardMask;
+    // Wall-clock time of the last ride, used by the DayFreezer to find completed days
+    private volatile long lastWriteMillis;
+
+    /**
+     * Constructs an empty DayPartition.
+     *
+     * @param resortID   the resort ID
+     * @param seasonID   the season ID
+     * @param dayID      the day ID
+     * @param shardCount the number of shards, rounded up to a power of two
+     */
+    public DayPartition(int resortID, int seasonID, int dayID, int shardCount) {
+        this.resortID = resortID;
+        this.seasonID = seasonID;
+        this.dayID = dayID;
+        int count = shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1;
+        this.shards = new RideShard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new RideShard();
+        }
+        this.shardMask = count - 1;
+        this.lastWriteMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Appends one ride to the shard owning the skier.
+     *
+     * @param skierID  the skier ID
+     * @param time     the ride time
+     * @param liftID   the lift ID
+     * @param waitTime the wait time
+     */
+    public void append(int skierID, int time, int liftID, int waitTime) {
+        shardFor(skierID).append(skierID, time, liftID, waitTime);
+    }
+
+    /**
+     * Records that rides are being written now. Called once per batch rather than per ride.
+     *
+     * @param nowMillis the current wall-clock time
+     */
+    public void markWritten(long nowMillis) {
+        if (lastWriteMillis != nowMillis) {
+            lastWriteMillis = nowMillis;
+        }
+    }
+
+    /**
+     * Returns the wall-clock time of the last write.
+     *
+     * @return the time in milliseconds
+     */
+    public long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    /**
+     * Returns the shard that stores the rides of the given skier.
+     *
+     * @param skierID the skier ID
+     * @return the owning shard
+     */
+    public RideShard shardFor(int skierID) {
+        // Spread sequential skier IDs over the shards
+        int h = skierID * 0x9E3779B9;
+        return shards[(h ^ (h >>> 16)) & shardMask];
+    }
+
+    /**
+     * Returns the skier's total vertical for the day, walking only the skier's own rows through the shard index.
+     *
+     * @param skierID the skier ID
+     * @return the total vertical, or -1 if the skier has no rides in this partition
+     */
+    public long dayVertical(int skierID) {
+        RideShard shard = shardFor(skierID);
+        int row = shard.lastRowOf(skierID);
+        if (row < 0) {
+            return -1;
+        }
+        long total = 0;
+        for (; row >= 0; row = shard.previousRowAt(row)) {
+            total += RideStore.verticalOf(shard.liftIDAt(row));
+        }
+        return total;
+    }
+
+    /**
+     * Returns the skier's data version within this day. It is the skier's last row plus one,
+     * so it changes exactly when a ride of the skier is appended to this partition.
+     *
+     * @param skierID the skier ID
+     * @return the version, 0 if the skier has no rides in this partition
+     */
+    public long skierVersion(int skierID) {
+        return shardFor(skierID).lastRowOf(skierID) + 1L;
+    }
+
+    /**
+     * Returns the number of rides stored in this partition.
+     *
+     * @return the total number of rides over all shards
+     */
+    public long size() {
+        long total = 0;
+        for (RideShard shard : shards) {
+            total += shard.size();
+        }
+        return total;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public RideShard shard(int index) {
+        return shards[index];
+    }
+
+    public int getResortID() {
+        return resortID;
+    }
+
+    public int getSeasonID() {
+        return seasonID;
+    }
+
+    public int getDayID() {
+        return dayID;
+    }
+}
@@ -0,0 +1,101 @@
+package storage;
+
+import java.util.Arrays;
+
+/**
+ * DayState is the immutable set of stores holding one day's rides: the active heap partition that receives
+ * new rides, a sealed heap partition waiting to be frozen, and the frozen files on disk.
+ * RideStore swaps whole states atomically, so a reader always sees each ride in exactly one of them.
+ */
+final class DayState {
+
+    static final FrozenDay[] NO_FILES = new FrozenDay[0];
+
+    // Changes whenever the active partition is replaced, so versions derived from it never repeat
+    final long epoch;
+    final DayPartition active;
+    final DayPartition sealed;
+    final long sealedGeneration;
+    final long sealedWalPosition;
+    final FrozenDay[] frozen;
+
+    DayState(long epoch, DayPartition active, DayPartition sealed, long sealedGeneration, long sealedWalPosition,
+             FrozenDay[] frozen) {
+        this.epoch = epoch;
+        this.active = active;
+        this.sealed = sealed;
+        this.sealedGeneration = sealedGeneration;
+        this.sealedWalPosition = sealedWalPosition;
+        this.frozen = frozen;
+    }
+
+    DayState withActive(DayPartition partition) {
+        return new DayState(epoch, partition, sealed, sealedGeneration, sealedWalPosition, frozen);
+    }
+
+    /**
+     * Moves the active partition to the sealed slot; the next ride of the day starts a new active partition.
+     *
+     * @param generation  the generation of the file the sealed partition will be frozen into
+     * @param walPosition the write-ahead log position at the time of sealing
+     */
+    DayState seal(long generation, long walPosition) {
+        return new DayState(generation, null, active, generation, walPosition, frozen);
+    }
+
+    /**
+     * Replaces the sealed partition by the file it was frozen into.
+     */
+    DayState freeze(FrozenDay file) {
+        FrozenDay[] files = Arrays.copyOf(frozen, frozen.length + 1);
+        files[frozen.length] = file;
+        return new DayState(epoch, active, null, 0, 0, files);
+    }
+
+    /**
+     * Replaces the given frozen files by the file they were merged into.
+     */
+    DayState merge(FrozenDay[] inputs, FrozenDay merged) {
+        FrozenDay[] files = new FrozenDay[frozen.length - inputs.length + 1];
+        int count = 0;
+        for (FrozenDay file : frozen) {
+            if (!Arrays.asList(inputs).contains(file)) {
+                files[count++] = file;
+            }
+        }
+        files[count] = merged;
+        return new DayState(epoch, active, sealed, sealedGeneration, sealedWalPosition, files);
+    }
+
+    /**
+     * Adds a file found on disk at startup.
+     */
+    DayState load(FrozenDay file) {
+        FrozenDay[] files = Arrays.copyOf(frozen, frozen.length + 1);
+        files[frozen.length] = file;
+        return new DayState(Math.max(epoch, file.getGeneration()), active, sealed, sealedGeneration,
+                sealedWalPosition, files);
+    }
+
+    /**
+     * Returns the write-ahead log position below which every ride of the day is in a frozen file.
+     */
+    long frozenWalPosition() {
+        long position = 0;
+        for (FrozenDay file : frozen) {
+            position = Math.max(position, file.getWalPosition());
+        }
+        return position;
+    }
+
+    /**
+     * Returns the number of rides over all stores of the day.
+     */
+    long size() {
+        long total = (active == null ? 0 : active.size()) + (sealed == null ? 0 : sealed.size());
+        for (FrozenDay file : frozen) {
+            total += file.rideCount();
+        }
+        return total;
+    }
+}
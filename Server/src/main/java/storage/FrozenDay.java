@@ -0,0 +1,469 @@
+package storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * FrozenDay is an immutable, memory-mapped file holding the rides of one (resortID, seasonID, dayID).
+ * Rides are sorted by skierID, then time, and encoded in blocks of INDEX_INTERVAL rows. Within a block each
+ * ride stores the varint delta of its skierID, the varint delta of its time (the time itself, zigzag encoded,
+ * when the skier changes or the block starts), and the zigzag varints of its liftID and waitTime, so a typical
+ * ride takes 4 to 5 bytes instead of 16. A sparse index holds the first skierID and the byte offset of every
+ * block: a skier lookup binary-searches the index and decodes from one block on, straight from the mapping,
+ * so a frozen day costs no heap beyond this object and several times more days fit in the page cache.
+ * The object itself only holds the header: the file is mapped on first access and unmapped again when the
+ * ColdTier evicts it, and skier lookups are served from the tier's summary cache where possible.
+ *
+ * File layout (little-endian): a 64-byte header (magic, version, resortID, seasonID, dayID, ride count,
+ * index interval, index entries, generation, superseded generation, write-ahead log position, data bytes),
+ * then the index of (first skierID, data offset) pairs, then the encoded blocks.
+ * Version 1 files, which store each column as plain ints followed by an index of first skierIDs, are still read.
+ */
+public class FrozenDay {
+
+    public static final String SUFFIX = ".day";
+    public static final int INDEX_INTERVAL = 128;
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC = 0x534B4443;
+    private static final int VERSION = 2;
+    private static final int PLAIN_VERSION = 1;
+
+    private final Path path;
+    private final int resortID;
+    private final int seasonID;
+    private final int dayID;
+    private final int rideCount;
+    private final long generation;
+    private final long supersedes;
+    private final long walPosition;
+    private final int version;
+    private final int indexEntries;
+    private final int indexStart;
+    private final int blocksStart;
+    private final long fileBytes;
+    private final ColdTier tier;
+    // Set and cleared by the tier; a reader keeps the mapping it got for as long as it needs it
+    volatile Mapping mapping;
+    volatile boolean referenced;
+
+    /**
+     * The mapped file, with the plain int columns of a version 1 file (null for an encoded file).
+     */
+    static final class Mapping {
+        final ByteBuffer data;
+        final IntBuffer[] columns;
+
+        Mapping(ByteBuffer data, IntBuffer[] columns) {
+            this.data = data;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * Constructs a FrozenDay from a file's header; use open() or write().
+     */
+    private FrozenDay(Path path, ByteBuffer header, long fileBytes, ColdTier tier) throws IOException {
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        this.version = header.getInt(4);
+        if (header.getInt(0) != MAGIC || (version != VERSION && version != PLAIN_VERSION)) {
+            throw new IOException("Not a frozen day file: " + path);
+        }
+        this.path = path;
+        this.fileBytes = fileBytes;
+        this.tier = tier;
+        this.resortID = header.getInt(8);
+        this.seasonID = header.getInt(12);
+        this.dayID = header.getInt(16);
+        this.rideCount = header.getInt(20);
+        this.indexEntries = header.getInt(28);
+        this.generation = header.getLong(32);
+        this.supersedes = header.getLong(40);
+        this.walPosition = header.getLong(48);
+        if (version == PLAIN_VERSION) {
+            this.indexStart = HEADER_BYTES + 4 * rideCount * 4;
+            this.blocksStart = 0;
+        } else {
+            this.indexStart = HEADER_BYTES;
+            this.blocksStart = HEADER_BYTES + indexEntries * 8;
+        }
+    }
+
+    /**
+     * Reads the header of an existing frozen day file; the rest of the file is mapped on first access.
+     *
+     * @param path the file
+     * @param tier the tier managing the file's mapping and summaries
+     * @return the frozen day
+     * @throws IOException if the file cannot be read or is not a frozen day file
+     */
+    public static FrozenDay open(Path path, ColdTier tier) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && in.read(header) >= 0) {
+                // Read until the header is complete or the file ends
+            }
+            if (header.hasRemaining()) {
+                throw new IOException("Truncated frozen day file: " + path);
+            }
+            return new FrozenDay(path, header, in.size(), tier);
+        }
+    }
+
+    /**
+     * Maps the whole file; called by the tier.
+     *
+     * @return the mapping
+     * @throws IOException if the file cannot be mapped
+     */
+    Mapping mapFile() throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed, so a mapped day holds no file descriptor
+            MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, fileBytes);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            IntBuffer[] columns = null;
+            if (version == PLAIN_VERSION) {
+                int column = rideCount * 4;
+                columns = new IntBuffer[4];
+                for (int i = 0; i < 4; i++) {
+                    columns[i] = view(data, HEADER_BYTES + i * column, column);
+                }
+            }
+            return new Mapping(data, columns);
+        }
+    }
+
+    /**
+     * Returns the file's mapping, asking the tier to map it if it is not mapped.
+     */
+    private Mapping mapping() throws IOException {
+        Mapping current = mapping;
+        if (current == null) {
+            return tier.map(this);
+        }
+        if (!referenced) {
+            referenced = true;
+        }
+        return current;
+    }
+
+    /**
+     * Encodes rides sorted by skier and time to a new frozen day file and maps it. The file is written under a
+     * temporary name, synced and then renamed, so a crash never leaves a partial file behind.
+     *
+     * @param dir         the directory holding frozen day files
+     * @param tier        the tier managing the file's mapping and summaries
+     * @param resortID    the resort ID
+     * @param seasonID    the season ID
+     * @param dayID       the day ID
+     * @param generation  the generation of the new file, unique over all files
+     * @param supersedes  files of the same day with a generation up to this one are replaced by this file
+     * @param walPosition every ride logged before this write-ahead log position is in this file or an older one
+     * @param rides       the rides, sorted by skierID and time
+     * @return the frozen day
+     * @throws IOException if the file cannot be written
+     */
+    static FrozenDay write(Path dir, ColdTier tier, int resortID, int seasonID, int dayID, long generation, long supersedes,
+                           long walPosition, RideColumns rides) throws IOException {
+        int count = rides.size;
+        int indexEntries = (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+        int[] offsets = new int[indexEntries];
+        VarintBuffer blocks = new VarintBuffer(count * 5 + 16);
+        for (int row = 0; row < count; row++) {
+            int skierID = rides.skierIDs[row];
+            int time = rides.times[row];
+            if (row % INDEX_INTERVAL == 0) {
+                offsets[row / INDEX_INTERVAL] = blocks.size;
+                blocks.putZigzag(time);
+            } else {
+                int skierDelta = skierID - rides.skierIDs[row - 1];
+                blocks.putVarint(skierDelta);
+                if (skierDelta == 0) {
+                    blocks.putVarint(time - rides.times[row - 1]);
+                } else {
+                    blocks.putZigzag(time);
+                }
+            }
+            blocks.putZigzag(rides.liftIDs[row]);
+            blocks.putZigzag(rides.waitTimes[row]);
+        }
+
+        long bytes = HEADER_BYTES + 8L * indexEntries + blocks.size;
+        String name = String.format("day-%d-%d-%d-%010d", resortID, seasonID, dayID, generation);
+        Path temp = dir.resolve(name + ".tmp");
+        Path target = dir.resolve(name + SUFFIX);
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer data = out.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            data.putInt(MAGIC).putInt(VERSION).putInt(resortID).putInt(seasonID).putInt(dayID)
+                    .putInt(count).putInt(INDEX_INTERVAL).putInt(indexEntries)
+                    .putLong(generation).putLong(supersedes).putLong(walPosition).putLong(blocks.size);
+            for (int block = 0; block < indexEntries; block++) {
+                data.putInt(rides.skierIDs[block * INDEX_INTERVAL]).putInt(offsets[block]);
+            }
+            data.put(blocks.bytes, 0, blocks.size);
+            data.force();
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        return open(target, tier);
+    }
+
+    /**
+     * Returns the skier's total vertical for the day from the tier's summary cache, or else by decoding only
+     * the skier's rides and the rows before them in the skier's first block, and caching the result.
+     *
+     * @param skierID the skier ID
+     * @return the total vertical, or -1 if the skier has no rides in this file
+     * @throws UncheckedIOException if the file cannot be mapped
+     */
+    public long dayVertical(int skierID) {
+        long total = tier.summary(generation, skierID);
+        if (total != ColdTier.MISSING) {
+            return total;
+        }
+        try {
+            Decoder rides = seekSkier(mapping(), skierID);
+            total = -1;
+            if (rides != null) {
+                total = 0;
+                do {
+                    total += RideStore.verticalOf(rides.liftID);
+                } while (rides.next() && rides.skierID == skierID);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        tier.putSummary(generation, skierID, total);
+        return total;
+    }
+
+    /**
+     * Returns whether the skier has rides in this file.
+     *
+     * @param skierID the skier ID
+     * @return true if the skier has at least one ride
+     * @throws UncheckedIOException if the file cannot be mapped
+     */
+    public boolean contains(int skierID) {
+        return dayVertical(skierID) >= 0;
+    }
+
+    /**
+     * Decodes the rows [from, to) in order and passes each ride to the visitor.
+     *
+     * @param from    the first row
+     * @param to      the row after the last one
+     * @param visitor receives the rides
+     * @throws IOException if the file cannot be mapped or the visitor fails
+     */
+    public void scan(int from, int to, RideVisitor visitor) throws IOException {
+        if (from >= to) {
+            return;
+        }
+        Decoder rides = new Decoder(mapping(), from / INDEX_INTERVAL);
+        while (rides.row < from) {
+            rides.next();
+        }
+        do {
+            visitor.visit(rides.skierID, rides.time, rides.liftID, rides.waitTime);
+        } while (rides.next() && rides.row < to);
+    }
+
+    /**
+     * Positions a decoder at the skier's first ride: a binary search over the sparse index picks the block,
+     * then the block is decoded up to the skier.
+     *
+     * @param mapping the file's mapping
+     * @param skierID the skier ID
+     * @return a decoder at the skier's first row, or null if the skier has no rides in this file
+     */
+    private Decoder seekSkier(Mapping mapping, int skierID) {
+        if (rideCount == 0) {
+            return null;
+        }
+        // Find the last block whose first skier is below skierID; the skier's first row is in that block or starts the next
+        int low = 0;
+        int high = indexEntries - 1;
+        int block = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (firstSkierOf(mapping.data, mid) < skierID) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        Decoder rides = new Decoder(mapping, block);
+        while (rides.skierID < skierID) {
+            if (!rides.next()) {
+                return null;
+            }
+        }
+        return rides.skierID == skierID ? rides : null;
+    }
+
+    private int firstSkierOf(ByteBuffer data, int block) {
+        return version == PLAIN_VERSION ? data.getInt(indexStart + block * 4) : data.getInt(indexStart + block * 8);
+    }
+
+    /**
+     * Decodes rides forward from the start of a block, holding the ride at the current row.
+     * Crossing into the next block restarts from its index entry, so decoding continues seamlessly.
+     */
+    private final class Decoder {
+        int row;
+        int skierID;
+        int time;
+        int liftID;
+        int waitTime;
+        private final ByteBuffer data;
+        private final IntBuffer[] columns;
+        private int position;
+
+        Decoder(Mapping mapping, int block) {
+            data = mapping.data;
+            columns = mapping.columns;
+            row = block * INDEX_INTERVAL;
+            if (columns == null) {
+                position = blocksStart + data.getInt(indexStart + block * 8 + 4);
+            }
+            decode();
+        }
+
+        /**
+         * Moves to the next row.
+         *
+         * @return false if the current row was the last one
+         */
+        boolean next() {
+            if (++row >= rideCount) {
+                return false;
+            }
+            decode();
+            return true;
+        }
+
+        private void decode() {
+            if (columns != null) {
+                skierID = columns[0].get(row);
+                time = columns[1].get(row);
+                liftID = columns[2].get(row);
+                waitTime = columns[3].get(row);
+                return;
+            }
+            if (row % INDEX_INTERVAL == 0) {
+                skierID = firstSkierOf(data, row / INDEX_INTERVAL);
+                time = zigzag(varint());
+            } else {
+                int skierDelta = varint();
+                skierID += skierDelta;
+                time = skierDelta == 0 ? time + varint() : zigzag(varint());
+            }
+            liftID = zigzag(varint());
+            waitTime = zigzag(varint());
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data.get(position++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private int zigzag(int value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    public int rideCount() {
+        return rideCount;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getResortID() {
+        return resortID;
+    }
+
+    public int getSeasonID() {
+        return seasonID;
+    }
+
+    public int getDayID() {
+        return dayID;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getSupersedes() {
+        return supersedes;
+    }
+
+    public long getWalPosition() {
+        return walPosition;
+    }
+
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    /**
+     * Returns a little-endian int view of a region of the mapping.
+     */
+    private static IntBuffer view(ByteBuffer data, int offset, int length) {
+        return data.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    /**
+     * A growable byte array that ints are appended to as varints, 7 bits per byte, low bits first.
+     */
+    private static final class VarintBuffer {
+        byte[] bytes;
+        int size;
+
+        VarintBuffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        /**
+         * Appends an int as an unsigned varint; negative values take 5 bytes.
+         */
+        void putVarint(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Appends a signed int zigzag encoded, so small negative values stay short.
+         */
+        void putZigzag(int value) {
+            putVarint((value << 1) ^ (value >> 31));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package storage;
+
+import java.util.Arrays;
+
+/**
+ * IntIntMap is a minimal open-addressing hash map from int keys to int values with linear probing.
+ * It is not thread-safe; RideShard only touches it while holding its own lock.
+ */
+public class IntIntMap {
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * Constructs an empty IntIntMap.
+     *
+     * @param capacity the initial capacity, rounded up to a power of two
+     */
+    public IntIntMap(int capacity) {
+        int length = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        keys = new int[length];
+        values = new int[length];
+        mask = length - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value.
+     *
+     * @param key   the key, must not be Integer.MIN_VALUE
+     * @param value the value
+     */
+    public void put(int key, int value) {
+        int slot = slotOf(key);
+        if (keys[slot] == EMPTY) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+                slot = slotOf(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key          the key
+     * @param defaultValue the value returned if the key is absent
+     * @return the value, or defaultValue
+     */
+    public int get(int key, int defaultValue) {
+        int slot = slotOf(key);
+        return keys[slot] == key ? values[slot] : defaultValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slotOf(int key) {
+        int h = key * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
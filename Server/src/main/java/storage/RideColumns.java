@@ -0,0 +1,109 @@
+package storage;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * RideColumns collects the rides of one day in growable primitive columns so they can be
+ * sorted by skier and time and written out as a FrozenDay. It is only used by the freezer thread.
+ */
+class RideColumns {
+
+    int[] skierIDs;
+    int[] times;
+    int[] liftIDs;
+    int[] waitTimes;
+    int size;
+
+    /**
+     * Constructs empty RideColumns.
+     *
+     * @param capacity the initial number of rides
+     */
+    RideColumns(int capacity) {
+        int length = Math.max(16, capacity);
+        skierIDs = new int[length];
+        times = new int[length];
+        liftIDs = new int[length];
+        waitTimes = new int[length];
+    }
+
+    /**
+     * Appends one ride, growing the columns if needed.
+     */
+    void add(int skierID, int time, int liftID, int waitTime) {
+        if (size == skierIDs.length) {
+            int capacity = size * 2;
+            skierIDs = Arrays.copyOf(skierIDs, capacity);
+            times = Arrays.copyOf(times, capacity);
+            liftIDs = Arrays.copyOf(liftIDs, capacity);
+            waitTimes = Arrays.copyOf(waitTimes, capacity);
+        }
+        skierIDs[size] = skierID;
+        times[size] = time;
+        liftIDs[size] = liftID;
+        waitTimes[size] = waitTime;
+        size++;
+    }
+
+    /**
+     * Appends every row of the partition, shard by shard.
+     *
+     * @param partition a partition that no longer receives rides
+     */
+    void addAll(DayPartition partition) {
+        for (int s = 0; s < partition.shardCount(); s++) {
+            RideShard shard = partition.shard(s);
+            int rows = shard.size();
+            for (int row = 0; row < rows; row++) {
+                add(shard.skierIDAt(row), shard.timeAt(row), shard.liftIDAt(row), shard.waitTimeAt(row));
+            }
+        }
+    }
+
+    /**
+     * Appends every ride of a frozen day.
+     *
+     * @param day the frozen day
+     * @throws IOException if the file cannot be read
+     */
+    void addAll(FrozenDay day) throws IOException {
+        day.scan(0, day.rideCount(), this::add);
+    }
+
+    /**
+     * Sorts the rides by skierID and each skier's rides by time, keeping the original order of equal times.
+     */
+    void sortBySkierAndTime() {
+        // Rank the rows by (time, original row), with the time's sign bit flipped so negative times sort first
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((times[i] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL) << 31 | i;
+        }
+        Arrays.sort(keys);
+        int[] rowOfRank = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            rowOfRank[rank] = (int) (keys[rank] & Integer.MAX_VALUE);
+        }
+        // Then sort (skierID, time rank) keys packed into longs; skier IDs are never negative
+        for (int rank = 0; rank < size; rank++) {
+            keys[rank] = ((long) skierIDs[rowOfRank[rank]] << 32) | rank;
+        }
+        Arrays.sort(keys);
+        int[] sortedSkiers = new int[size];
+        int[] sortedTimes = new int[size];
+        int[] sortedLifts = new int[size];
+        int[] sortedWaits = new int[size];
+        for (int i = 0; i < size; i++) {
+            int row = rowOfRank[(int) keys[i]];
+            sortedSkiers[i] = skierIDs[row];
+            sortedTimes[i] = times[row];
+            sortedLifts[i] = liftIDs[row];
+            sortedWaits[i] = waitTimes[row];
+        }
+        skierIDs = sortedSkiers;
+        times = sortedTimes;
+        liftIDs = sortedLifts;
+        waitTimes = sortedWaits;
+    }
+}
@@ -0,0 +1,123 @@
+package storage;
+
+/**
+ * RideCursor is a position in the export order of one day: a store of the day (frozen files first, then the
+ * sealed and the active partition), a shard of that store and a row of that shard. In the active partition,
+ * whose shards keep growing, it is instead the number of rows already exported from each shard, so rides
+ * appended to a shard behind the cursor are still exported. It also carries the fingerprint of the day's
+ * stores when it was issued, so a cursor outliving a freeze or merge is detected.
+ *
+ * Its text form, "fingerprint-store-shard-row" or in the active partition "fingerprint-store-rows" with the
+ * rows of the shards separated by dots, and the fingerprint in hex, is what clients pass back.
+ */
+public final class RideCursor {
+
+    private final long fingerprint;
+    private final int store;
+    private final int shard;
+    private final int row;
+    private final int[] shardRows;
+
+    /**
+     * Constructs a RideCursor in an immutable store.
+     *
+     * @param fingerprint the fingerprint of the day's stores
+     * @param store       the store index
+     * @param shard       the shard index within the store
+     * @param row         the row within the shard
+     */
+    public RideCursor(long fingerprint, int store, int shard, int row) {
+        this.fingerprint = fingerprint;
+        this.store = store;
+        this.shard = shard;
+        this.row = row;
+        this.shardRows = null;
+    }
+
+    /**
+     * Constructs a RideCursor in the active partition.
+     *
+     * @param fingerprint the fingerprint of the day's stores
+     * @param store       the index of the active partition
+     * @param shardRows   the number of rows exported from each shard of the partition
+     */
+    public RideCursor(long fingerprint, int store, int[] shardRows) {
+        this.fingerprint = fingerprint;
+        this.store = store;
+        this.shard = 0;
+        this.row = 0;
+        this.shardRows = shardRows;
+    }
+
+    /**
+     * Parses the text form of a cursor.
+     *
+     * @param text the cursor as returned by toString()
+     * @return the cursor
+     * @throws IllegalArgumentException if the text is not a cursor
+     */
+    public static RideCursor parse(String text) {
+        String[] parts = text.split("-");
+        if (parts.length != 3 && parts.length != 4) {
+            throw new IllegalArgumentException("Invalid cursor: " + text);
+        }
+        long fingerprint = Long.parseUnsignedLong(parts[0], 16);
+        int store = Integer.parseInt(parts[1]);
+        if (store < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + text);
+        }
+        if (parts.length == 3) {
+            String[] rows = parts[2].split("\\.");
+            int[] shardRows = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                shardRows[i] = Integer.parseInt(rows[i]);
+                if (shardRows[i] < 0) {
+                    throw new IllegalArgumentException("Invalid cursor: " + text);
+                }
+            }
+            return new RideCursor(fingerprint, store, shardRows);
+        }
+        RideCursor cursor = new RideCursor(fingerprint, store, Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+        if (cursor.shard < 0 || cursor.row < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + text);
+        }
+        return cursor;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder().append(Long.toHexString(fingerprint)).append('-').append(store);
+        if (shardRows == null) {
+            return text.append('-').append(shard).append('-').append(row).toString();
+        }
+        for (int i = 0; i < shardRows.length; i++) {
+            text.append(i == 0 ? '-' : '.').append(shardRows[i]);
+        }
+        return text.toString();
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getStore() {
+        return store;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Returns the number of rows exported from each shard of the active partition.
+     *
+     * @return the rows per shard, or null if the cursor is in an immutable store
+     */
+    public int[] getShardRows() {
+        return shardRows;
+    }
+}
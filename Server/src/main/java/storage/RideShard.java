@@ -0,0 +1,129 @@
+package storage;
+
+import java.util.Arrays;
+
+/**
+ * RideShard is one append-only stripe of a DayPartition.
+ * Rides are kept in primitive int columns split into fixed-size chunks, so growing the shard
+ * never copies ride data and no per-ride object is kept on the heap.
+ * Appends are serialized per shard; reads of rows below size() need no lock.
+ *
+ * The shard also indexes its rows by skier: a skierID -> last row map plus a "previous row of the
+ * same skier" column chain every ride of a skier together, so reading one skier's rides touches
+ * only those rows instead of scanning the shard.
+ */
+public class RideShard {
+
+    static final int CHUNK_SHIFT = 13;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private int[][] skierIDs = new int[4][];
+    private int[][] times = new int[4][];
+    private int[][] liftIDs = new int[4][];
+    private int[][] waitTimes = new int[4][];
+    private int[][] previousRows = new int[4][];
+    private final IntIntMap lastRowBySkier = new IntIntMap(64);
+
+    // Published after the row is written, so readers see complete rows only
+    private volatile int size;
+
+    /**
+     * Appends one ride to the end of the shard.
+     *
+     * @param skierID  the skier ID
+     * @param time     the ride time
+     * @param liftID   the lift ID
+     * @param waitTime the wait time
+     */
+    public synchronized void append(int skierID, int time, int liftID, int waitTime) {
+        int row = size;
+        int chunk = row >>> CHUNK_SHIFT;
+        if ((row & CHUNK_MASK) == 0) {
+            addChunk(chunk);
+        }
+        int offset = row & CHUNK_MASK;
+        skierIDs[chunk][offset] = skierID;
+        times[chunk][offset] = time;
+        liftIDs[chunk][offset] = liftID;
+        waitTimes[chunk][offset] = waitTime;
+        previousRows[chunk][offset] = lastRowBySkier.get(skierID, -1);
+        lastRowBySkier.put(skierID, row);
+        size = row + 1;
+    }
+
+    /**
+     * Allocates the chunk at the given index, doubling the chunk directory if it is full.
+     *
+     * @param chunk the index of the chunk to allocate
+     */
+    private void addChunk(int chunk) {
+        if (chunk == skierIDs.length) {
+            int capacity = chunk * 2;
+            skierIDs = Arrays.copyOf(skierIDs, capacity);
+            times = Arrays.copyOf(times, capacity);
+            liftIDs = Arrays.copyOf(liftIDs, capacity);
+            waitTimes = Arrays.copyOf(waitTimes, capacity);
+            previousRows = Arrays.copyOf(previousRows, capacity);
+        }
+        skierIDs[chunk] = new int[CHUNK_SIZE];
+        times[chunk] = new int[CHUNK_SIZE];
+        liftIDs[chunk] = new int[CHUNK_SIZE];
+        waitTimes[chunk] = new int[CHUNK_SIZE];
+        previousRows[chunk] = new int[CHUNK_SIZE];
+    }
+
+    /**
+     * Returns the most recent row of the skier. Earlier rows are reached through previousRowAt().
+     *
+     * @param skierID the skier ID
+     * @return the last row of the skier, or -1 if the skier has no rides in this shard
+     */
+    public synchronized int lastRowOf(int skierID) {
+        return lastRowBySkier.get(skierID, -1);
+    }
+
+    /**
+     * Returns the number of distinct skiers in the shard.
+     *
+     * @return the skier count
+     */
+    public synchronized int skierCount() {
+        return lastRowBySkier.size();
+    }
+
+    /**
+     * Returns the number of rides visible to readers.
+     *
+     * @return the number of rides in the shard
+     */
+    public int size() {
+        return size;
+    }
+
+    public int skierIDAt(int row) {
+        return skierIDs[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    public int timeAt(int row) {
+        return times[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    public int liftIDAt(int row) {
+        return liftIDs[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    public int waitTimeAt(int row) {
+        return waitTimes[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the previous row of the same skier.
+     *
+     * @param row a row of the skier
+     * @return the skier's previous row, or -1 if this is the skier's first ride
+     */
+    public int previousRowAt(int row) {
+        return previousRows[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+}
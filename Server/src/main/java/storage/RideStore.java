@@ -0,0 +1,358 @@
+package storage;
+
+import ingest.RideBatch;
+import ingest.RideSink;
+import trace.StorageEvent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RideStore is the in-memory lift-ride store behind SkierServlet.
+ * Rides are partitioned by (resortID, seasonID, dayID); each partition keeps its rides in
+ * primitive columns, so the heap holds a few int arrays per partition instead of one object per ride.
+ * There is no global lock: partitions are created through a concurrent map and writers only
+ * contend on the shard of the skier they write.
+ *
+ * Each day moves through three stores: the active heap partition receiving rides, a sealed heap partition
+ * while the DayFreezer writes it out, and immutable FrozenDay files, mapped on demand by the ColdTier. The stores of a day are
+ * kept in one DayState that is swapped atomically, so readers see every ride exactly once.
+ */
+public class RideStore implements RideSink {
+
+    public static final String ATTRIBUTE = RideStore.class.getName();
+    public static final int DEFAULT_SHARDS = 16;
+    /** The highest seasonID a partition key can hold; rides of later seasons must be rejected before they get here. */
+    public static final int MAX_SEASON_ID = 0xFFFF;
+
+    private final ConcurrentHashMap<Long, DayState> days = new ConcurrentHashMap<>();
+    private final AtomicLong generations = new AtomicLong();
+    private final int shardsPerPartition;
+
+    /**
+     * Constructs a RideStore with the default number of shards per partition.
+     */
+    public RideStore() {
+        this(DEFAULT_SHARDS);
+    }
+
+    /**
+     * Constructs a RideStore.
+     *
+     * @param shardsPerPartition the number of write shards in each day partition
+     */
+    public RideStore(int shardsPerPartition) {
+        this.shardsPerPartition = shardsPerPartition;
+    }
+
+    /**
+     * Stores one lift ride.
+     *
+     * @param resortID the resort ID
+     * @param seasonID the season ID
+     * @param dayID    the day ID
+     * @param skierID  the skier ID
+     * @param time     the ride time
+     * @param liftID   the lift ID
+     * @param waitTime the wait time
+     */
+    public void append(int resortID, int seasonID, int dayID, int skierID, int time, int liftID, int waitTime) {
+        DayPartition partition = partitionFor(resortID, seasonID, dayID);
+        partition.markWritten(System.currentTimeMillis());
+        partition.append(skierID, time, liftID, waitTime);
+    }
+
+    /**
+     * Stores every ride of a batch. Consecutive rides of the same day reuse the partition lookup.
+     *
+     * @param batch the rides to store
+     */
+    @Override
+    public void write(RideBatch batch) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        DayPartition partition = null;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < batch.size(); i++) {
+            if (partition == null || partition.getResortID() != batch.resortID(i)
+                    || partition.getSeasonID() != batch.seasonID(i) || partition.getDayID() != batch.dayID(i)) {
+                partition = partitionFor(batch.resortID(i), batch.seasonID(i), batch.dayID(i));
+                partition.markWritten(now);
+            }
+            partition.append(batch.skierID(i), batch.time(i), batch.liftID(i), batch.waitTime(i));
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "insert";
+            event.rides = batch.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the active partition of the given day, creating it if it does not exist yet.
+     *
+     * @param resortID the resort ID
+     * @param seasonID the season ID
+     * @param dayID    the day ID
+     * @return the active day partition
+     */
+    public DayPartition partitionFor(int resortID, int seasonID, int dayID) {
+        Long key = partitionKey(resortID, seasonID, dayID);
+        DayState state = days.get(key);
+        if (state != null && state.active != null) {
+            return state.active;
+        }
+        return days.compute(key, (k, current) -> {
+            if (current != null && current.active != null) {
+                return current;
+            }
+            DayPartition partition = new DayPartition(resortID, seasonID, dayID, shardsPerPartition);
+            return current == null ? new DayState(0, partition, null, 0, 0, DayState.NO_FILES)
+                    : current.withActive(partition);
+        }).active;
+    }
+
+    /**
+     * Returns the active partition of the given day, or null if it has none.
+     *
+     * @param resortID the resort ID
+     * @param seasonID the season ID
+     * @param dayID    the day ID
+     * @return the active day partition, or null
+     */
+    public DayPartition getPartition(int resortID, int seasonID, int dayID) {
+        DayState state = days.get(partitionKey(resortID, seasonID, dayID));
+        return state == null ? null : state.active;
+    }
+
+    /**
+     * Returns the active partitions of all days.
+     *
+     * @return the partitions still receiving rides
+     */
+    public Collection<DayPartition> partitions() {
+        List<DayPartition> result = new ArrayList<>();
+        for (DayState state : days.values()) {
+            if (state.active != null) {
+                result.add(state.active);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the skier's total vertical for one day over the heap partitions and the frozen files of the day.
+     *
+     * @param resortID the resort ID
+     * @param seasonID the season ID
+     * @param dayID    the day ID
+     * @param skierID  the skier ID
+     * @return the total vertical, or -1 if the skier has no rides that day
+     */
+    public long dayVertical(int resortID, int seasonID, int dayID, int skierID) {
+        DayState state = days.get(partitionKey(resortID, seasonID, dayID));
+        if (state == null) {
+            return -1;
+        }
+        long total = -1;
+        total = addVertical(total, state.active == null ? -1 : state.active.dayVertical(skierID));
+        total = addVertical(total, state.sealed == null ? -1 : state.sealed.dayVertical(skierID));
+        for (FrozenDay file : state.frozen) {
+            total = addVertical(total, file.dayVertical(skierID));
+        }
+        return total;
+    }
+
+    /**
+     * Returns a snapshot of one day's stores for reading all its rides page by page.
+     *
+     * @param resortID the resort ID
+     * @param seasonID the season ID
+     * @param dayID    the day ID
+     * @return the export, or null if the day has no rides
+     */
+    public DayExport export(int resortID, int seasonID, int dayID) {
+        DayState state = days.get(partitionKey(resortID, seasonID, dayID));
+        return state == null ? null : new DayExport(state);
+    }
+
+    /**
+     * Returns the skier's data version for one day. Before the day is first sealed this is the skier's
+     * version in the active partition; afterwards the epoch of the day's current stores is added in the
+     * high bits, so the version still changes exactly when the skier's rides or the day's stores change.
+     *
+     * @param resortID the resort ID
+     * @param seasonID the season ID
+     * @param dayID    the day ID
+     * @param skierID  the skier ID
+     * @return the version, 0 if the skier has no rides that day
+     */
+    public long skierDayVersion(int resortID, int seasonID, int dayID, int skierID) {
+        DayState state = days.get(partitionKey(resortID, seasonID, dayID));
+        if (state == null) {
+            return 0;
+        }
+        long version = state.active == null ? 0 : state.active.skierVersion(skierID);
+        if (version == 0 && !containsInactive(state, skierID)) {
+            return 0;
+        }
+        return (state.epoch << 32) | version;
+    }
+
+    /**
+     * Returns whether the write-ahead log record at the given position is already stored in a frozen file,
+     * so replay must skip it.
+     *
+     * @param position the record's write-ahead log position
+     * @param resortID the resort ID
+     * @param seasonID the season ID
+     * @param dayID    the day ID
+     * @return true if the ride is covered by a frozen file
+     */
+    public boolean isFrozen(long position, int resortID, int seasonID, int dayID) {
+        DayState state = days.get(partitionKey(resortID, seasonID, dayID));
+        return state != null && position < state.frozenWalPosition();
+    }
+
+    /**
+     * Returns the write-ahead log position from which replay still needs records: the lowest frozen position
+     * of the days with rides on the heap, as their later rides were logged from there on. Must run while no batch
+     * is between the write-ahead log and the store.
+     *
+     * @param current the current write-ahead log position
+     * @return the lowest position still needed, or current if every day is frozen
+     */
+    public long retainedWalPosition(long current) {
+        long position = current;
+        for (DayState state : days.values()) {
+            if (state.active != null || state.sealed != null) {
+                position = Math.min(position, state.frozenWalPosition());
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Returns the total number of rides in the store.
+     *
+     * @return the number of rides
+     */
+    public long size() {
+        long total = 0;
+        for (DayState state : days.values()) {
+            total += state.size();
+        }
+        return total;
+    }
+
+    /**
+     * Returns whether the skier has rides in the sealed partition or a frozen file of the day.
+     */
+    private static boolean containsInactive(DayState state, int skierID) {
+        if (state.sealed != null && state.sealed.skierVersion(skierID) > 0) {
+            return true;
+        }
+        for (FrozenDay file : state.frozen) {
+            if (file.contains(skierID)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a partial vertical to a running total, where -1 means "no rides".
+     */
+    private static long addVertical(long total, long part) {
+        if (part < 0) {
+            return total;
+        }
+        return total < 0 ? part : total + part;
+    }
+
+    /**
+     * Returns the partition keys of all days, for the DayFreezer.
+     */
+    Collection<Long> dayKeys() {
+        return days.keySet();
+    }
+
+    /**
+     * Returns the current state of a day, or null if the day is unknown.
+     */
+    DayState dayState(long key) {
+        return days.get(key);
+    }
+
+    /**
+     * Seals the active partition of a day. Must run while no batch is between the write-ahead log and the store.
+     *
+     * @param key         the day's partition key
+     * @param walPosition the current write-ahead log position
+     * @return the sealed state, or null if the day has no active partition or is still being frozen
+     */
+    DayState seal(long key, long walPosition) {
+        return days.computeIfPresent(key, (k, state) -> state.active == null || state.sealed != null ? state
+                : state.seal(generations.incrementAndGet(), walPosition));
+    }
+
+    /**
+     * Replaces the day's sealed partition by the file it was frozen into.
+     */
+    void freeze(long key, FrozenDay file) {
+        days.computeIfPresent(key, (k, state) -> state.freeze(file));
+    }
+
+    /**
+     * Replaces frozen files of a day by the file they were merged into.
+     */
+    void merge(long key, FrozenDay[] inputs, FrozenDay merged) {
+        days.computeIfPresent(key, (k, state) -> state.merge(inputs, merged));
+    }
+
+    /**
+     * Returns a new file generation, unique over all days.
+     */
+    long nextGeneration() {
+        return generations.incrementAndGet();
+    }
+
+    /**
+     * Adds a frozen file found on disk at startup.
+     *
+     * @param file the frozen day
+     */
+    void load(FrozenDay file) {
+        generations.accumulateAndGet(file.getGeneration(), Math::max);
+        days.compute(partitionKey(file.getResortID(), file.getSeasonID(), file.getDayID()),
+                (k, state) -> (state == null ? new DayState(0, null, null, 0, 0, DayState.NO_FILES) : state).load(file));
+    }
+
+    /**
+     * Returns the vertical gained by one ride on the given lift.
+     *
+     * @param liftID the lift ID
+     * @return the vertical in meters
+     */
+    public static int verticalOf(int liftID) {
+        return liftID * 10;
+    }
+
+    /**
+     * Packs a (resortID, seasonID, dayID) triple into one key.
+     * Days take 9 bits, seasons 16 bits and resorts the remaining high bits, so the key is unique only for
+     * seasonIDs up to MAX_SEASON_ID; callers reject larger ones.
+     *
+     * @param resortID the resort ID
+     * @param seasonID the season ID, at most MAX_SEASON_ID
+     * @param dayID    the day ID
+     * @return the partition key
+     */
+    public static long partitionKey(int resortID, int seasonID, int dayID) {
+        return ((long) resortID << 25) | ((long) seasonID << 9) | (dayID & 0x1FF);
+    }
+}
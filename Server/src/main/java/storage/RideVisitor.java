@@ -0,0 +1,20 @@
+package storage;
+
+import java.io.IOException;
+
+/**
+ * RideVisitor receives rides read from the columns of a store one at a time.
+ */
+public interface RideVisitor {
+
+    /**
+     * Receives one ride.
+     *
+     * @param skierID  the skier ID
+     * @param time     the ride time
+     * @param liftID   the lift ID
+     * @param waitTime the wait time
+     * @throws IOException if the visitor fails to write the ride
+     */
+    void visit(int skierID, int time, int liftID, int waitTime) throws IOException;
+}
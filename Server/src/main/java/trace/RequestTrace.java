@@ -0,0 +1,233 @@
+package trace;
+
+import pool.ThreadCache;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * RequestTrace splits the time of one request into stages. A handler enters each stage as it reaches it,
+ * which ends the previous one; the time spent in every stage is emitted as a JFR StageEvent and, if enabled,
+ * summarized in a Server-Timing header so a client can correlate its own latency with the server's stages.
+ *
+ * Both outputs are switched at runtime: events are recorded while a Flight Recorder recording runs
+ * (for example "jcmd PID JFR.start"), and the header is sent while setServerTiming(true) is in effect.
+ * With both off, begin() returns a shared inactive trace and every call is a field check.
+ * An active trace belongs to the thread handling the request and is reused for its next request; on a virtual
+ * thread it comes from a shared pool and goes back to it when the request finishes.
+ */
+public final class RequestTrace {
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final StageEvent PROBE = new StageEvent();
+    private static final RequestTrace INACTIVE = new RequestTrace();
+    private static final ThreadCache<RequestTrace> TRACES = new ThreadCache<>(RequestTrace::new, 256);
+    // The trace of the request being handled on each thread, null once it is finished
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+    private static volatile boolean serverTiming;
+
+    private final long[] nanos = new long[STAGES.length];
+    private boolean active;
+    private boolean events;
+    private HttpServletResponse response;
+    private String endpoint;
+    private long startNanos;
+    private long stageStart;
+    private Stage stage;
+    private int entered;
+    private StageEvent event;
+
+    private RequestTrace() {
+    }
+
+    /**
+     * Enables or disables the Server-Timing header for requests starting from now on.
+     *
+     * @param enabled true to send the header
+     */
+    public static void setServerTiming(boolean enabled) {
+        serverTiming = enabled;
+    }
+
+    public static boolean isServerTiming() {
+        return serverTiming;
+    }
+
+    /**
+     * Starts tracing a request on the current thread.
+     *
+     * @param res        The HttpServletResponse object that contains the response.
+     * @param startNanos the System.nanoTime() taken when the request arrived
+     * @return the thread's trace, or an inactive trace if neither output is enabled
+     */
+    public static RequestTrace begin(HttpServletResponse res, long startNanos) {
+        boolean events = PROBE.isEnabled();
+        if (!events && !serverTiming) {
+            return INACTIVE;
+        }
+        RequestTrace trace = TRACES.acquire();
+        CURRENT.set(trace);
+        trace.active = true;
+        trace.events = events;
+        trace.response = res;
+        trace.endpoint = null;
+        trace.startNanos = startNanos;
+        trace.stageStart = startNanos;
+        trace.stage = null;
+        trace.entered = 0;
+        return trace;
+    }
+
+    /**
+     * Returns the trace of the request being handled on the current thread.
+     *
+     * @return the active trace, or an inactive trace if the request is not traced
+     */
+    public static RequestTrace current() {
+        if (!serverTiming && !PROBE.isEnabled()) {
+            return INACTIVE;
+        }
+        RequestTrace trace = CURRENT.get();
+        return trace != null && trace.active ? trace : INACTIVE;
+    }
+
+    /**
+     * Names the endpoint the request was routed to, for the events of its stages.
+     *
+     * @param endpoint the endpoint label
+     */
+    public void endpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Ends the current stage, if any, and enters the given one. Entering a stage again adds to its time.
+     *
+     * @param next the stage the request enters, or null to only end the current one
+     */
+    public void enter(Stage next) {
+        if (!active || next == stage) {
+            return;
+        }
+        long now = System.nanoTime();
+        endStage(now, 0);
+        stage = next;
+        stageStart = now;
+        if (events && next != null) {
+            event = new StageEvent();
+            event.begin();
+        }
+    }
+
+    /**
+     * Enters the WRITE stage and sets the Server-Timing header with the stages so far, if the response is
+     * the one traced on this thread. Called before the body is written, while headers can still be set.
+     *
+     * @param res The HttpServletResponse object that contains the response.
+     */
+    public static void beforeBody(HttpServletResponse res) {
+        RequestTrace trace = current();
+        if (trace.response != res) {
+            return;
+        }
+        trace.enter(Stage.WRITE);
+        if (serverTiming && !res.isCommitted()) {
+            res.setHeader("Server-Timing", trace.serverTiming(true));
+        }
+    }
+
+    /**
+     * Returns the Server-Timing value of the stages so far, without the total, for a request that is answered
+     * later on another thread; that thread adds its own time with appendTiming().
+     *
+     * @return the value, or null if the header is off or the request is not traced
+     */
+    public String handOff() {
+        if (!active || !serverTiming) {
+            return null;
+        }
+        enter(null);
+        return serverTiming(false);
+    }
+
+    /**
+     * Appends one metric to a Server-Timing value.
+     *
+     * @param header the value so far
+     * @param name   the metric name
+     * @param nanos  the duration
+     * @return the extended value
+     */
+    public static String appendTiming(String header, String name, long nanos) {
+        StringBuilder value = new StringBuilder(header);
+        appendMetric(value, name, nanos);
+        return value.toString();
+    }
+
+    /**
+     * Ends the last stage and releases the trace. Called once the response is written, in a finally block.
+     *
+     * @param status the HTTP status code sent
+     */
+    public void finish(int status) {
+        if (!active) {
+            return;
+        }
+        endStage(System.nanoTime(), status);
+        active = false;
+        response = null;
+        event = null;
+        CURRENT.set(null);
+        TRACES.release(this);
+    }
+
+    /**
+     * Adds the time since the current stage was entered to it and commits its event.
+     */
+    private void endStage(long now, int status) {
+        if (stage == null) {
+            return;
+        }
+        int index = stage.ordinal();
+        nanos[index] = ((entered & (1 << index)) == 0 ? 0 : nanos[index]) + now - stageStart;
+        entered |= 1 << index;
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.endpoint = endpoint;
+                event.stage = stage.getLabel();
+                event.status = status;
+                event.commit();
+            }
+            event = null;
+        }
+    }
+
+    /**
+     * Formats the completed stages, and optionally the total so far, as a Server-Timing value in milliseconds.
+     */
+    private String serverTiming(boolean total) {
+        StringBuilder header = new StringBuilder(128);
+        for (Stage completed : STAGES) {
+            if ((entered & (1 << completed.ordinal())) != 0) {
+                appendMetric(header, completed.getLabel(), nanos[completed.ordinal()]);
+            }
+        }
+        if (total) {
+            appendMetric(header, "total", System.nanoTime() - startNanos);
+        }
+        return header.toString();
+    }
+
+    private static void appendMetric(StringBuilder header, String name, long nanos) {
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        long micros = nanos / 1000;
+        header.append(name).append(";dur=").append(micros / 1000).append('.');
+        long fraction = micros % 1000;
+        if (fraction < 100) {
+            header.append(fraction < 10 ? "00" : "0");
+        }
+        header.append(fraction);
+    }
+}
@@ -0,0 +1,27 @@
+package trace;
+
+/**
+ * The stages a request handler passes through. Each stage's label names it in the Server-Timing header
+ * and in the JFR StageEvent.
+ */
+public enum Stage {
+    ROUTE("route"),
+    ADMIT("admit"),
+    CLUSTER("cluster"),
+    DEDUP("dedup"),
+    PARSE("parse"),
+    STORE("store"),
+    INGEST("ingest"),
+    QUERY("query"),
+    WRITE("write");
+
+    private final String label;
+
+    Stage(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,30 @@
+package trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * StageEvent is the JDK Flight Recorder event for the time one request spent in one stage of a servlet
+ * handler. It is recorded by RequestTrace whenever a recording with the event enabled is running.
+ */
+@Name("skier.Stage")
+@Label("Request Stage")
+@Description("Time a request spent in one stage of a servlet handler")
+@Category({"Skier", "Request"})
+@StackTrace(false)
+public class StageEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Stage")
+    String stage;
+
+    // Known once the response is sent, so only set on the request's last stage
+    @Label("Status")
+    int status;
+}
@@ -0,0 +1,32 @@
+package trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * StorageEvent is the JDK Flight Recorder event for one operation of the storage layer: inserting a batch,
+ * syncing the write-ahead log, sealing, freezing or merging a day, or mapping a frozen file.
+ * Callers use the usual pattern: begin(), the operation, then set the fields and commit() if shouldCommit().
+ */
+@Name("skier.Storage")
+@Label("Storage Operation")
+@Description("One operation of the ride store, the write-ahead log or the day freezer")
+@Category({"Skier", "Storage"})
+@StackTrace(false)
+public class StorageEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Rides")
+    public long rides;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,409 @@
+package wal;
+
+import ingest.RideBatch;
+import ingest.RideSink;
+import trace.StorageEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * WriteAheadLog persists every ingested ride before it is applied to the in-memory store.
+ * Rides are appended as fixed-width binary records to memory-mapped segment files, so an append
+ * is a handful of memory writes; the page cache keeps the data across a redeploy or process crash.
+ * Syncing to disk is group-committed: after every batch when the fsync interval is 0, otherwise
+ * by a background thread every interval. On startup all segments are replayed in parallel. Appends are
+ * serialized by a ReentrantLock rather than a monitor, so a virtual thread syncing to disk with the lock held
+ * does not pin its carrier thread.
+ *
+ * Segment layout: a 16-byte header (magic, version, segment ID) followed by 32-byte little-endian
+ * records (resortID, seasonID, dayID, skierID, time, liftID, waitTime, checksum). The first record
+ * whose checksum does not match marks the end of the segment.
+ *
+ * A record's position is its segment ID in the high 32 bits and its index within the segment in the low
+ * 32 bits, so positions grow with every append, across segments and restarts. Once every record of a segment
+ * is stored elsewhere, deleteSegmentsBefore() removes it, so disk use and replay time follow the rides still
+ * on the heap rather than the whole history.
+ */
+public class WriteAheadLog implements RideSink, Closeable {
+
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_BYTES = 32;
+    private static final int MAGIC = 0x534B5741;
+    private static final int VERSION = 1;
+    private static final String SEGMENT_PREFIX = "rides-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long fsyncIntervalMs;
+    private final ScheduledExecutorService flusher;
+    private final AtomicLong replayedRecords = new AtomicLong();
+    // Guards the active segment
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long segmentID;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private volatile boolean dirty;
+
+    /**
+     * ReplayFilter tells replay which records are already stored elsewhere and must not be applied again.
+     */
+    public interface ReplayFilter {
+
+        /**
+         * Returns whether the record must be skipped.
+         *
+         * @param position the record's position
+         * @param resortID the resort ID
+         * @param seasonID the season ID
+         * @param dayID    the day ID
+         * @return true to skip the record
+         */
+        boolean skip(long position, int resortID, int seasonID, int dayID);
+    }
+
+    /**
+     * Opens the log in the given directory, replays every existing segment into the target sink
+     * and starts a new segment for appends.
+     *
+     * @param dir             the directory holding the segment files
+     * @param segmentBytes    the size of each segment file
+     * @param fsyncIntervalMs how often appended records are synced to disk; 0 syncs after every batch
+     * @param replayTarget    the sink that receives the replayed rides
+     * @param replayFilter    skips records already stored elsewhere, or null to replay everything
+     * @param replayThreads   the number of segments replayed concurrently
+     * @return the opened log
+     * @throws IOException if a segment cannot be read or created
+     */
+    public static WriteAheadLog open(Path dir, int segmentBytes, long fsyncIntervalMs, RideSink replayTarget,
+                                     ReplayFilter replayFilter, int replayThreads) throws IOException {
+        Files.createDirectories(dir);
+        WriteAheadLog log = new WriteAheadLog(dir, segmentBytes, fsyncIntervalMs);
+        List<Path> segments = listSegments(dir);
+        log.replay(segments, replayTarget, replayFilter, replayThreads);
+        long lastID = segments.isEmpty() ? 0 : segmentIDOf(segments.get(segments.size() - 1));
+        log.openSegment(lastID + 1);
+        return log;
+    }
+
+    /**
+     * Constructs a WriteAheadLog; use open() to replay and start appending.
+     */
+    private WriteAheadLog(Path dir, int segmentBytes, long fsyncIntervalMs) {
+        this.dir = dir;
+        this.segmentBytes = Math.max(segmentBytes, HEADER_BYTES + RECORD_BYTES);
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        if (fsyncIntervalMs > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "wal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Appends every ride of the batch to the log, rolling to a new segment when the current one is full.
+     *
+     * @param batch the rides to persist
+     * @throws UncheckedIOException if a new segment cannot be created
+     */
+    @Override
+    public void write(RideBatch batch) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        lock.lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                if (buffer.remaining() < RECORD_BYTES) {
+                    buffer.force();
+                    openSegment(segmentID + 1);
+                }
+                int resortID = batch.resortID(i);
+                int seasonID = batch.seasonID(i);
+                int dayID = batch.dayID(i);
+                int skierID = batch.skierID(i);
+                int time = batch.time(i);
+                int liftID = batch.liftID(i);
+                int waitTime = batch.waitTime(i);
+                buffer.putInt(resortID).putInt(seasonID).putInt(dayID).putInt(skierID)
+                        .putInt(time).putInt(liftID).putInt(waitTime)
+                        .putInt(checksum(resortID, seasonID, dayID, skierID, time, liftID, waitTime));
+            }
+            if (fsyncIntervalMs == 0) {
+                buffer.force();
+            } else {
+                dirty = true;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "walAppend";
+            event.rides = batch.size();
+            event.bytes = (long) batch.size() * RECORD_BYTES;
+            event.commit();
+        }
+    }
+
+    /**
+     * Syncs appended records to disk if anything was written since the last sync.
+     */
+    public void flush() {
+        if (!dirty) {
+            return;
+        }
+        MappedByteBuffer current;
+        lock.lock();
+        try {
+            dirty = false;
+            current = buffer;
+        } finally {
+            lock.unlock();
+        }
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        current.force();
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "walSync";
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the position the next appended record will get.
+     *
+     * @return the next record position
+     */
+    public long position() {
+        lock.lock();
+        try {
+            return (segmentID << 32) | ((buffer.position() - HEADER_BYTES) / RECORD_BYTES);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments whose records all lie before the given position. The active segment is kept.
+     *
+     * @param position the lowest position whose record may still be needed for replay
+     * @return the number of segments deleted
+     * @throws IOException if the directory cannot be listed or a segment cannot be deleted
+     */
+    public int deleteSegmentsBefore(long position) throws IOException {
+        long firstKept;
+        lock.lock();
+        try {
+            firstKept = Math.min(position >>> 32, segmentID);
+        } finally {
+            lock.unlock();
+        }
+        int deleted = 0;
+        for (Path segment : listSegments(dir)) {
+            if (segmentIDOf(segment) >= firstKept) {
+                break;
+            }
+            Files.delete(segment);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns the number of records replayed when the log was opened.
+     *
+     * @return the replayed record count
+     */
+    public long getReplayedRecords() {
+        return replayedRecords.get();
+    }
+
+    /**
+     * Stops the background flusher, syncs the active segment and closes it.
+     *
+     * @throws IOException if closing the segment file fails
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (flusher != null) {
+                flusher.shutdownNow();
+            }
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates and maps a new segment file and writes its header.
+     *
+     * @param id the ID of the new segment
+     * @throws IOException if the file cannot be created or mapped
+     */
+    private void openSegment(long id) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        Path path = dir.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(id);
+        segmentID = id;
+    }
+
+    /**
+     * Replays the given segments into the target sink, several segments at a time.
+     *
+     * @param segments the segment files, oldest first
+     * @param target   the sink receiving the rides
+     * @param filter   skips records already stored elsewhere, or null
+     * @param threads  the number of segments replayed concurrently
+     * @throws IOException if a segment cannot be read
+     */
+    private void replay(List<Path> segments, RideSink target, ReplayFilter filter, int threads) throws IOException {
+        if (segments.isEmpty()) {
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, segments.size())));
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (Path segment : segments) {
+                results.add(pool.submit(() -> replaySegment(segment, target, filter)));
+            }
+            for (Future<Long> result : results) {
+                replayedRecords.addAndGet(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying write-ahead log", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to replay write-ahead log", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Replays one segment, stopping at the first record whose checksum does not match.
+     *
+     * @param segment the segment file
+     * @param target  the sink receiving the rides
+     * @param filter  skips records already stored elsewhere, or null
+     * @return the number of records replayed
+     * @throws IOException if the segment cannot be read
+     */
+    private static long replaySegment(Path segment, RideSink target, ReplayFilter filter) throws IOException {
+        try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ)) {
+            if (in.size() < HEADER_BYTES) {
+                return 0;
+            }
+            MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+                throw new IOException("Not a write-ahead log segment: " + segment);
+            }
+            long position = data.getLong() << 32;
+
+            RideBatch batch = new RideBatch(1024);
+            long count = 0;
+            for (; data.remaining() >= RECORD_BYTES; position++) {
+                int resortID = data.getInt();
+                int seasonID = data.getInt();
+                int dayID = data.getInt();
+                int skierID = data.getInt();
+                int time = data.getInt();
+                int liftID = data.getInt();
+                int waitTime = data.getInt();
+                if (data.getInt() != checksum(resortID, seasonID, dayID, skierID, time, liftID, waitTime)) {
+                    break;
+                }
+                if (filter != null && filter.skip(position, resortID, seasonID, dayID)) {
+                    continue;
+                }
+                if (!batch.add(resortID, seasonID, dayID, skierID, time, liftID, waitTime)) {
+                    target.write(batch);
+                    batch.clear();
+                    batch.add(resortID, seasonID, dayID, skierID, time, liftID, waitTime);
+                }
+                count++;
+            }
+            if (batch.size() > 0) {
+                target.write(batch);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Lists the segment files in the directory, oldest first.
+     *
+     * @param dir the log directory
+     * @return the segment paths sorted by segment ID
+     * @throws IOException if the directory cannot be listed
+     */
+    private static List<Path> listSegments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(segments::add);
+        }
+        segments.sort((a, b) -> Long.compare(segmentIDOf(a), segmentIDOf(b)));
+        return segments;
+    }
+
+    private static long segmentIDOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Computes the record checksum. It never equals 0 for an all-zero record,
+     * so the zero-filled tail of a segment is never mistaken for a ride.
+     */
+    private static int checksum(int resortID, int seasonID, int dayID, int skierID, int time, int liftID,
+                                int waitTime) {
+        int h = 0x2F6B1D3;
+        h = h * 31 + resortID;
+        h = h * 31 + seasonID;
+        h = h * 31 + dayID;
+        h = h * 31 + skierID;
+        h = h * 31 + time;
+        h = h * 31 + liftID;
+        h = h * 31 + waitTime;
+        return h ^ (h >>> 16);
+    }
+}